@@ -2,6 +2,7 @@ package Vista;
 
 import controlador.CitaController;
 import modelo.Cita;
+import modelo.DisponibilidadDia;
 
 import javax.swing.*;
 import javax.swing.border.*;
@@ -366,8 +367,8 @@ public class HU01_AgendarCita extends JFrame {
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
             LocalDate fecha = LocalDate.parse(txtFecha.getText(), formatter);
             
-            // Obtener horarios ocupados del controlador
-            List<LocalTime> horariosOcupados = controller.obtenerHorariosOcupados(personal, fecha);
+            // Obtener la disponibilidad del día del controlador
+            DisponibilidadDia disponibilidad = controller.obtenerDisponibilidad(personal, fecha);
             
             // Actualizar botones de horarios
             Component[] components = pnlHorarios.getComponents();
@@ -376,7 +377,7 @@ public class HU01_AgendarCita extends JFrame {
                     JToggleButton btn = (JToggleButton) comp;
                     LocalTime horaBoton = LocalTime.parse(btn.getText());
                     
-                    boolean ocupado = horariosOcupados.contains(horaBoton);
+                    boolean ocupado = !disponibilidad.estaLibre(horaBoton);
                     
                     if (ocupado) {
                         // Marcar como ocupado
@@ -2,16 +2,20 @@ package Vista;
 
 import controlador.CitaController;
 import modelo.Cita;
+import modelo.EventoCita;
+import modelo.OyenteCitas;
 
 import javax.swing.*;
 import javax.swing.border.*;
 import javax.swing.table.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 
 public class HU04_CancelarCita extends JFrame {
-
+    
     private static final long serialVersionUID = 1L;
     private JPanel contentPane;
     private JTable tablaCitas;
@@ -19,68 +23,82 @@ public class HU04_CancelarCita extends JFrame {
     private JButton btnCancelar, btnActualizar;
     
     private CitaController controller;
-
+    
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm");
+    
+    // Actualiza solo la fila de la cita que cambió (en el hilo de Swing)
+    private final OyenteCitas oyente = evento -> SwingUtilities.invokeLater(() -> aplicarEvento(evento));
+    
     public HU04_CancelarCita() {
         setTitle("Sistema de Gestión de Citas - Cancelar Cita");
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         setBounds(100, 100, 1100, 700);
-
+        
         controller = new CitaController();
-
+        
         contentPane = new JPanel();
         contentPane.setBackground(new Color(240, 244, 248));
         contentPane.setBorder(new EmptyBorder(10, 10, 10, 10));
         contentPane.setLayout(new BorderLayout(10, 10));
         setContentPane(contentPane);
-
+        
         initComponents();
+        
+        controller.agregarOyente(oyente);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                controller.quitarOyente(oyente);
+            }
+        });
     }
-
+    
     private void initComponents() {
         contentPane.add(createHeaderPanel(), BorderLayout.NORTH);
         contentPane.add(createTablaPanel(), BorderLayout.CENTER);
         contentPane.add(createButtonPanel(), BorderLayout.SOUTH);
     }
-
+    
     private JPanel createHeaderPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(new Color(239, 83, 80));
         panel.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
-
+        
         JLabel lblTitulo = new JLabel("Cancelar Cita");
         lblTitulo.setFont(new Font("Segoe UI", Font.BOLD, 28));
         lblTitulo.setForeground(Color.WHITE);
         lblTitulo.setHorizontalAlignment(JLabel.CENTER);
-
+        
         JLabel lblSubtitulo = new JLabel("Gestiona y cancela tus citas con al menos 2 horas de anticipación");
         lblSubtitulo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
         lblSubtitulo.setForeground(Color.WHITE);
         lblSubtitulo.setHorizontalAlignment(JLabel.CENTER);
-
+        
         panel.add(lblTitulo, BorderLayout.CENTER);
         panel.add(lblSubtitulo, BorderLayout.SOUTH);
-
+        
         return panel;
     }
-
+    
     private JPanel createTablaPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(Color.WHITE);
-
+        
         String[] columnas = {"Código", "Fecha", "Hora", "Servicio", "Personal", "Estado", "Acción"};
         modeloTabla = new DefaultTableModel(columnas, 0) {
             public boolean isCellEditable(int row, int column) {
                 return false;
             }
         };
-
+        
         tablaCitas = new JTable(modeloTabla);
         tablaCitas.setRowHeight(40);
         tablaCitas.setFont(new Font("Segoe UI", Font.PLAIN, 13));
         tablaCitas.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 13));
         tablaCitas.getTableHeader().setBackground(new Color(239, 83, 80));
         tablaCitas.getTableHeader().setForeground(Color.WHITE);
-
+        
         tablaCitas.getColumnModel().getColumn(5).setCellRenderer(new DefaultTableCellRenderer() {
             public Component getTableCellRendererComponent(JTable table, Object value,
                                                           boolean isSelected, boolean hasFocus, int row, int column) {
@@ -88,7 +106,7 @@ public class HU04_CancelarCita extends JFrame {
                 String estado = value.toString();
                 setHorizontalAlignment(CENTER);
                 setFont(new Font("Segoe UI", Font.BOLD, 12));
-
+                
                 if (estado.equals("PENDIENTE")) {
                     setForeground(new Color(76, 175, 80));
                 } else if (estado.equals("CANCELADA")) {
@@ -96,7 +114,7 @@ public class HU04_CancelarCita extends JFrame {
                 } else if (estado.equals("ATENDIDA")) {
                     setForeground(new Color(33, 150, 243));
                 }
-
+                
                 setBackground(isSelected ? new Color(255, 205, 210) : Color.WHITE);
                 return this;
             }
@@ -119,46 +137,80 @@ public class HU04_CancelarCita extends JFrame {
                 return this;
             }
         });
-
+        
         tablaCitas.getSelectionModel().addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
                 btnCancelar.setEnabled(tablaCitas.getSelectedRow() >= 0);
             }
         });
-
+        
         JScrollPane scrollPane = new JScrollPane(tablaCitas);
         panel.add(scrollPane, BorderLayout.CENTER);
-
+        
         cargarCitas();
         return panel;
     }
-
+    
     private void cargarCitas() {
         modeloTabla.setRowCount(0);
         
         List<Cita> citas = controller.obtenerCitasPendientes();
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
         
         for (Cita cita : citas) {
-            String accion = cita.puedeCancelar() ? "Puede cancelar" : "No cancelable";
-            modeloTabla.addRow(new Object[]{
-                cita.getCodigo(),
-                cita.getFecha().format(dateFormatter),
-                cita.getHora().format(timeFormatter),
-                cita.getServicio(),
-                cita.getPersonal(),
-                cita.getEstado().name(),
-                accion
-            });
+            modeloTabla.addRow(filaDe(cita));
         }
     }
-
+    
+    private Object[] filaDe(Cita cita) {
+        String accion = cita.puedeCancelar() ? "Puede cancelar" : "No cancelable";
+        return new Object[]{
+            cita.getCodigo(),
+            cita.getFecha().format(FORMATO_FECHA),
+            cita.getHora().format(FORMATO_HORA),
+            cita.getServicio(),
+            cita.getPersonal(),
+            cita.getEstado().name(),
+            accion
+        };
+    }
+    
+    /**
+     * Agrega, actualiza o quita la fila de la cita del evento
+     * (la tabla solo muestra citas pendientes)
+     */
+    private void aplicarEvento(EventoCita evento) {
+        Cita cita = evento.getCita();
+        int fila = buscarFila(cita.getCodigo());
+        
+        if (evento.getTipo() != EventoCita.Tipo.ELIMINADA
+                && cita.getEstado() == Cita.EstadoCita.PENDIENTE) {
+            Object[] datos = filaDe(cita);
+            if (fila < 0) {
+                modeloTabla.addRow(datos);
+            } else {
+                for (int columna = 0; columna < datos.length; columna++) {
+                    modeloTabla.setValueAt(datos[columna], fila, columna);
+                }
+            }
+        } else if (fila >= 0) {
+            modeloTabla.removeRow(fila);
+        }
+    }
+    
+    private int buscarFila(String codigo) {
+        for (int fila = 0; fila < modeloTabla.getRowCount(); fila++) {
+            if (codigo.equals(modeloTabla.getValueAt(fila, 0))) {
+                return fila;
+            }
+        }
+        return -1;
+    }
+    
     private JPanel createButtonPanel() {
         JPanel panel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 15, 15));
         panel.setBackground(Color.WHITE);
         panel.setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, new Color(224, 224, 224)));
-
+        
         btnActualizar = new JButton("Actualizar Lista");
         btnActualizar.setFont(new Font("Segoe UI", Font.PLAIN, 13));
         btnActualizar.setPreferredSize(new Dimension(150, 40));
@@ -170,7 +222,7 @@ public class HU04_CancelarCita extends JFrame {
                     "Actualización",
                     JOptionPane.INFORMATION_MESSAGE);
         });
-
+        
         btnCancelar = new JButton("Cancelar Cita Seleccionada");
         btnCancelar.setFont(new Font("Segoe UI", Font.BOLD, 13));
         btnCancelar.setPreferredSize(new Dimension(200, 40));
@@ -179,7 +231,7 @@ public class HU04_CancelarCita extends JFrame {
         btnCancelar.setFocusPainted(false);
         btnCancelar.setEnabled(false);
         btnCancelar.addActionListener(e -> cancelarCitaSeleccionada());
-
+        
         panel.add(btnActualizar);
         panel.add(btnCancelar);
         return panel;
@@ -220,7 +272,6 @@ public class HU04_CancelarCita extends JFrame {
                     resultado.getMensaje(),
                     "Cancelación Exitosa",
                     JOptionPane.INFORMATION_MESSAGE);
-                cargarCitas();
             } else {
                 JOptionPane.showMessageDialog(this,
                     resultado.getMensaje(),
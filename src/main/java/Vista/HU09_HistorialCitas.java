@@ -2,13 +2,20 @@ package Vista;
 
 import controlador.CitaController;
 import modelo.Cita;
+import modelo.EventoCita;
+import modelo.OyenteCitas;
 
 import javax.swing.*;
 import javax.swing.border.*;
 import javax.swing.table.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class HU09_HistorialCitas extends JFrame {
     
@@ -19,6 +26,22 @@ public class HU09_HistorialCitas extends JFrame {
     
     private CitaController controller;
     private JLabel lblTotalCitas, lblAtendidas, lblPendientes, lblCanceladas;
+    
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm");
+    
+    // Fila de cada cita en la tabla (por código)
+    private final Map<String, Integer> filas = new HashMap<>();
+    
+    // Conteos del resumen, ajustados con cada evento sin volver a consultar
+    private long pendientes, atendidas, canceladas;
+    
+    // Eventos recibidos que aún no se aplicaron: una ráfaga se aplica en una sola
+    // tarea del hilo de Swing
+    private final List<EventoCita> eventosPendientes = new ArrayList<>();
+    
+    // Actualiza solo las filas de las citas que cambiaron (en el hilo de Swing)
+    private final OyenteCitas oyente = this::encolarEvento;
  
     
     public HU09_HistorialCitas() {
@@ -35,6 +58,14 @@ public class HU09_HistorialCitas extends JFrame {
         setContentPane(contentPane);
         
         initComponents();
+        
+        controller.agregarOyente(oyente);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                controller.quitarOyente(oyente);
+            }
+        });
     }
     
     private void initComponents() {
@@ -95,18 +126,18 @@ public class HU09_HistorialCitas extends JFrame {
         
         tablaHistorial.getColumnModel().getColumn(5).setCellRenderer(new DefaultTableCellRenderer() {
             private static final long serialVersionUID = 1L;
-
+            
             @Override
             public Component getTableCellRendererComponent(JTable table, Object value,
                     boolean isSelected, boolean hasFocus, int row, int column) {
-
+                
                 Component c = super.getTableCellRendererComponent(
                         table, value, isSelected, hasFocus, row, column);
-
+                
                 String estado = value.toString();
                 setHorizontalAlignment(CENTER);
                 setFont(new Font("Segoe UI", Font.BOLD, 12));
-
+                
                 switch (estado) {
                     case "ATENDIDA":
                         setForeground(new Color(76, 175, 80));
@@ -124,7 +155,7 @@ public class HU09_HistorialCitas extends JFrame {
                         setForeground(Color.BLACK);
                         break;
                 }
-
+                
                 setBackground(isSelected ? new Color(225, 190, 231) : Color.WHITE);
                 return c;
             }
@@ -144,33 +175,131 @@ public class HU09_HistorialCitas extends JFrame {
     
     private void cargarHistorial() {
         modeloTabla.setRowCount(0);
+        filas.clear();
         
         List<Cita> citas = controller.obtenerTodasLasCitas();
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
         
         for (Cita cita : citas) {
-            modeloTabla.addRow(new Object[]{
-                cita.getCodigo(),
-                cita.getFecha().format(dateFormatter),
-                cita.getHora().format(timeFormatter),
-                cita.getServicio(),
-                cita.getPersonal(),
-                cita.getEstado().name(),
-                cita.getMotivo() != null ? cita.getMotivo() : "-"
-            });
+            agregarFila(cita);
         }
         
         actualizarEstadisticas();
     }
     
+    private Object[] filaDe(Cita cita) {
+        return new Object[]{
+            cita.getCodigo(),
+            cita.getFecha().format(FORMATO_FECHA),
+            cita.getHora().format(FORMATO_HORA),
+            cita.getServicio(),
+            cita.getPersonal(),
+            cita.getEstado().name(),
+            cita.getMotivo() != null ? cita.getMotivo() : "-"
+        };
+    }
+    
+    private void encolarEvento(EventoCita evento) {
+        synchronized (eventosPendientes) {
+            eventosPendientes.add(evento);
+            if (eventosPendientes.size() > 1) {
+                // Ya hay una tarea programada que lo va a aplicar
+                return;
+            }
+        }
+        SwingUtilities.invokeLater(this::aplicarEventos);
+    }
+    
+    private void aplicarEventos() {
+        List<EventoCita> eventos;
+        synchronized (eventosPendientes) {
+            eventos = new ArrayList<>(eventosPendientes);
+            eventosPendientes.clear();
+        }
+        
+        for (EventoCita evento : eventos) {
+            aplicarEvento(evento);
+        }
+        
+        mostrarEstadisticas();
+    }
+    
+    /**
+     * Agrega, actualiza o quita la fila de la cita y ajusta los conteos del resumen
+     */
+    private void aplicarEvento(EventoCita evento) {
+        Cita cita = evento.getCita();
+        Integer fila = filas.get(cita.getCodigo());
+        
+        switch (evento.getTipo()) {
+            case CREADA:
+                contar(cita.getEstado(), 1);
+                break;
+            case ELIMINADA:
+                contar(cita.getEstado(), -1);
+                break;
+            default:
+                contar(evento.getEstadoAnterior(), -1);
+                contar(cita.getEstado(), 1);
+        }
+        
+        if (evento.getTipo() == EventoCita.Tipo.ELIMINADA) {
+            if (fila != null) {
+                quitarFila(cita.getCodigo(), fila);
+            }
+        } else if (fila == null) {
+            agregarFila(cita);
+        } else if (evento.getTipo() == EventoCita.Tipo.ACTUALIZADA) {
+            Object[] datos = filaDe(cita);
+            for (int columna = 0; columna < datos.length; columna++) {
+                modeloTabla.setValueAt(datos[columna], fila, columna);
+            }
+        } else {
+            modeloTabla.setValueAt(cita.getEstado().name(), fila, 5);
+        }
+    }
+    
+    private void agregarFila(Cita cita) {
+        filas.put(cita.getCodigo(), modeloTabla.getRowCount());
+        modeloTabla.addRow(filaDe(cita));
+    }
+    
+    private void quitarFila(String codigo, int fila) {
+        modeloTabla.removeRow(fila);
+        filas.remove(codigo);
+        // Las filas siguientes suben una posición (las eliminaciones son raras)
+        filas.replaceAll((otro, posicion) -> posicion > fila ? posicion - 1 : posicion);
+    }
+    
+    private void contar(Cita.EstadoCita estado, long cambio) {
+        if (estado == null) {
+            return;
+        }
+        switch (estado) {
+            case PENDIENTE:
+                pendientes += cambio;
+                break;
+            case ATENDIDA:
+                atendidas += cambio;
+                break;
+            default:
+                canceladas += cambio;
+        }
+    }
+    
     private void actualizarEstadisticas() {
         CitaController.EstadisticasCitas stats = controller.obtenerEstadisticas();
         
-        lblTotalCitas.setText(String.valueOf(stats.getTotal()));
-        lblAtendidas.setText(String.valueOf(stats.getAtendidas()));
-        lblPendientes.setText(String.valueOf(stats.getPendientes()));
-        lblCanceladas.setText(String.valueOf(stats.getCanceladas() + stats.getNoAsistio()));
+        pendientes = stats.getPendientes();
+        atendidas = stats.getAtendidas();
+        canceladas = stats.getCanceladas() + stats.getNoAsistio();
+        mostrarEstadisticas();
+    }
+    
+    private void mostrarEstadisticas() {
+        lblTotalCitas.setText(String.valueOf(pendientes + atendidas + canceladas));
+        lblAtendidas.setText(String.valueOf(atendidas));
+        lblPendientes.setText(String.valueOf(pendientes));
+        lblCanceladas.setText(String.valueOf(canceladas));
     }
     
     private JPanel createResumenPanel() {
@@ -4,9 +4,13 @@ package com.mycompany.p3lab2brionesestefany;
 
 import Vista.MenuPrincipal;
 import java.awt.EventQueue;
+import modelo.RepositorioCitasMongo;
 public class P3Lab2BrionesEstefany {
 
    public static void main(String[] args) {
+        // Archivar a diario las citas finalizadas de días anteriores
+        RepositorioCitasMongo.obtenerInstancia().iniciarArchivadoDiario();
+        
         EventQueue.invokeLater(new Runnable() {
             public void run() {
                 try {
@@ -5,22 +5,33 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Controlador principal para la gestión de citas
  * Coordina las operaciones entre la vista y el modelo
  * MODIFICADO: Ahora usa RepositorioCitasMongo en lugar de RepositorioCitas
+ * (a través de la caché compartida RepositorioCitasCache)
  */
 public class CitaController {
     
-    private RepositorioCitasMongo repositorio;
+    private final IRepositorioCitas repositorio;
     
     public CitaController() {
         // CAMBIO IMPORTANTE: Usar MongoDB en lugar de repositorio en memoria
-        this.repositorio = RepositorioCitasMongo.obtenerInstancia();
+        this.repositorio = RepositorioCitasCache.obtenerInstancia();
         System.out.println("✅ CitaController inicializado con MongoDB");
     }
     
+    /**
+     * Crea el controlador sobre un repositorio concreto
+     * (por ejemplo, RepositorioCitas en memoria o con diario local)
+     */
+    public CitaController(IRepositorioCitas repositorio) {
+        this.repositorio = repositorio;
+    }
+    
     /**
      * Agenda una nueva cita
      * HU-01: Agendar cita en línea
@@ -38,8 +49,10 @@ public class CitaController {
         System.out.println("   - Hora: " + hora);
         
         // 1. Validar campos obligatorios
+        // (el solapamiento solo puede darse con citas de la misma fecha)
         ValidadorCitas.TipoError error = ValidadorCitas.validarCitaCompleta(
-            servicio, personal, fecha, hora, repositorio.obtenerTodas()
+            servicio, personal, fecha, hora,
+            fecha != null ? repositorio.obtenerPorFecha(fecha) : List.of()
         );
         
         if (error != ValidadorCitas.TipoError.NINGUNO) {
@@ -72,6 +85,30 @@ public class CitaController {
         }
     }
     
+    /**
+     * Agenda un lote de citas (campañas, chequeos grupales o migraciones)
+     * HU-01: Agendar cita en línea
+     * 
+     * El lote se valida en una sola pasada, incluidos los choques entre citas
+     * del mismo lote, y las aceptadas se guardan juntas
+     * 
+     * @return El resultado de cada cita, en el orden del lote
+     */
+    public ResultadoLote agendarLote(List<Cita> citas) {
+        System.out.println("📝 Intentando agendar lote de " + citas.size() + " citas");
+        
+        ResultadoLote resultado = repositorio.guardarLote(citas);
+        
+        for (ResultadoLote.Entrada rechazada : resultado.getRechazadas()) {
+            Cita cita = rechazada.getCita();
+            System.err.println("❌ Cita rechazada" + (cita != null ? " " + cita.getCodigo() : "") + 
+                              ": " + rechazada.getMotivo().getDescripcion());
+        }
+        System.out.println("✅ Lote agendado: " + resultado.contarAceptadas() + " aceptadas, " + 
+                          resultado.contarRechazadas() + " rechazadas");
+        return resultado;
+    }
+    
     /**
      * Obtiene los horarios ocupados para un personal en una fecha
      * HU-02: Consultar disponibilidad en tiempo real
@@ -82,6 +119,14 @@ public class CitaController {
         return horarios;
     }
     
+    /**
+     * Obtiene la disponibilidad de un personal en una fecha en una sola consulta
+     * HU-02: Consultar disponibilidad en tiempo real
+     */
+    public DisponibilidadDia obtenerDisponibilidad(String personal, LocalDate fecha) {
+        return repositorio.obtenerDisponibilidad(personal, fecha);
+    }
+    
     /**
      * Verifica si un horario específico está disponible
      * HU-02: Consultar disponibilidad en tiempo real
@@ -100,7 +145,18 @@ public class CitaController {
     public ResultadoOperacion cancelarCita(String codigo) {
         System.out.println("🗑️ Intentando cancelar cita: " + codigo);
         
-        // 1. Buscar la cita
+        // 1. Cancelar en una sola operación (el repositorio verifica que siga
+        //    pendiente y con al menos 2 horas de anticipación)
+        if (repositorio.cancelarCita(codigo)) {
+            System.out.println("✅ Cita cancelada exitosamente");
+            return new ResultadoOperacion(
+                true,
+                codigo,
+                "Cita cancelada exitosamente."
+            );
+        }
+        
+        // 2. Si no se canceló, buscar la cita solo para explicar el motivo
         Cita cita = repositorio.buscarPorCodigo(codigo);
         
         if (cita == null) {
@@ -112,7 +168,6 @@ public class CitaController {
             );
         }
         
-        // 2. Validar si puede cancelarse
         if (!cita.puedeCancelar()) {
             System.err.println("❌ Cita no puede cancelarse (menos de 2 horas)");
             return new ResultadoOperacion(
@@ -122,24 +177,12 @@ public class CitaController {
             );
         }
         
-        // 3. Cancelar usando el repositorio MongoDB
-        boolean cancelado = repositorio.cancelarCita(codigo);
-        
-        if (cancelado) {
-            System.out.println("✅ Cita cancelada exitosamente");
-            return new ResultadoOperacion(
-                true,
-                codigo,
-                "Cita cancelada exitosamente."
-            );
-        } else {
-            System.err.println("❌ Error al cancelar la cita");
-            return new ResultadoOperacion(
-                false,
-                null,
-                "Error al cancelar la cita."
-            );
-        }
+        System.err.println("❌ Error al cancelar la cita");
+        return new ResultadoOperacion(
+            false,
+            null,
+            "Error al cancelar la cita."
+        );
     }
     
     /**
@@ -170,6 +213,72 @@ public class CitaController {
         return todas;
     }
     
+    /**
+     * Recorre todas las citas sin cargarlas en una lista
+     * HU-09: Historial de citas (historiales grandes con memoria constante)
+     * Usar con try-with-resources para liberar el cursor
+     */
+    public Stream<Cita> streamTodasLasCitas() {
+        return repositorio.streamTodas();
+    }
+    
+    /**
+     * Obtiene una página de citas en orden (fecha, hora, código)
+     * HU-09: Historial de citas
+     * 
+     * @param personal Personal a filtrar, o null para todos
+     * @param estado Estado a filtrar, o null para todos
+     * @param continuacion Continuación de la página anterior, o null para la primera
+     * @param tamano Cantidad máxima de citas de la página
+     */
+    public PaginaCitas obtenerPaginaCitas(String personal, Cita.EstadoCita estado,
+                                          String continuacion, int tamano) {
+        PaginaCitas pagina = repositorio.obtenerPagina(personal, estado, continuacion, tamano);
+        System.out.println("📄 Página de citas: " + pagina.getCitas().size() + 
+                          (pagina.hayMas() ? " (hay más)" : " (última)"));
+        return pagina;
+    }
+    
+    /**
+     * Obtiene las citas entre dos fechas (ambas inclusive)
+     * HU-09 / HU-12: Historial y reportes por periodo
+     */
+    public List<Cita> obtenerCitasPorRango(LocalDate desde, LocalDate hasta) {
+        List<Cita> citas = repositorio.obtenerPorRango(desde, hasta);
+        System.out.println("📅 Citas entre " + desde + " y " + hasta + ": " + citas.size());
+        return citas;
+    }
+    
+    /**
+     * Obtiene las citas de un servicio
+     * HU-12: Reporte por servicio
+     */
+    public List<Cita> obtenerCitasPorServicio(String servicio) {
+        List<Cita> citas = repositorio.obtenerPorServicio(servicio);
+        System.out.println("🩺 Citas del servicio " + servicio + ": " + citas.size());
+        return citas;
+    }
+    
+    /**
+     * Obtiene las citas de un servicio en una fecha
+     * HU-01 / HU-12: Disponibilidad y reportes por servicio
+     */
+    public List<Cita> obtenerCitasPorServicioYFecha(String servicio, LocalDate fecha) {
+        List<Cita> citas = repositorio.obtenerPorServicioYFecha(servicio, fecha);
+        System.out.println("🩺 Citas del servicio " + servicio + " el " + fecha + ": " + citas.size());
+        return citas;
+    }
+    
+    /**
+     * Obtiene las citas de un servicio entre dos fechas (ambas inclusive)
+     * HU-12: Reporte por servicio en un periodo
+     */
+    public List<Cita> obtenerCitasPorServicioYRango(String servicio, LocalDate desde, LocalDate hasta) {
+        List<Cita> citas = repositorio.obtenerPorServicioYRango(servicio, desde, hasta);
+        System.out.println("🩺 Citas del servicio " + servicio + " entre " + desde + " y " + hasta + ": " + citas.size());
+        return citas;
+    }
+    
     /**
      * Busca una cita por código
      */
@@ -180,14 +289,31 @@ public class CitaController {
         return cita;
     }
     
+    /**
+     * Registra un oyente de citas creadas, canceladas y con cambio de estado
+     * HU-02 / HU-04 / HU-09: las pantallas actualizan solo las filas afectadas
+     */
+    public void agregarOyente(OyenteCitas oyente) {
+        repositorio.agregarOyente(oyente);
+    }
+    
+    /**
+     * Quita un oyente (al cerrar la pantalla)
+     */
+    public void quitarOyente(OyenteCitas oyente) {
+        repositorio.quitarOyente(oyente);
+    }
+    
     /**
      * Obtiene estadísticas de citas
      */
     public EstadisticasCitas obtenerEstadisticas() {
-        long pendientes = repositorio.contarPorEstado(Cita.EstadoCita.PENDIENTE);
-        long atendidas = repositorio.contarPorEstado(Cita.EstadoCita.ATENDIDA);
-        long canceladas = repositorio.contarPorEstado(Cita.EstadoCita.CANCELADA);
-        long noAsistio = repositorio.contarPorEstado(Cita.EstadoCita.NO_ASISTIO);
+        // Una sola lectura de los contadores en lugar de un conteo por estado
+        Map<Cita.EstadoCita, Long> conteo = repositorio.obtenerConteoPorEstado();
+        long pendientes = conteo.get(Cita.EstadoCita.PENDIENTE);
+        long atendidas = conteo.get(Cita.EstadoCita.ATENDIDA);
+        long canceladas = conteo.get(Cita.EstadoCita.CANCELADA);
+        long noAsistio = conteo.get(Cita.EstadoCita.NO_ASISTIO);
         
         System.out.println("📈 Estadísticas - P:" + pendientes + " A:" + atendidas + 
                           " C:" + canceladas + " N:" + noAsistio);
@@ -195,6 +321,22 @@ public class CitaController {
         return new EstadisticasCitas(pendientes, atendidas, canceladas, noAsistio);
     }
     
+    /**
+     * Obtiene las estadísticas de un personal, un servicio y un período
+     * (cualquier filtro en null no restringe) con una sola consulta agrupada
+     * HU-09 / HU-12
+     */
+    public EstadisticasCitas obtenerEstadisticas(String personal, String servicio,
+                                                 LocalDate desde, LocalDate hasta) {
+        Map<Cita.EstadoCita, Long> conteo = repositorio.obtenerConteoPorEstado(personal, servicio, desde, hasta);
+        return new EstadisticasCitas(
+            conteo.get(Cita.EstadoCita.PENDIENTE),
+            conteo.get(Cita.EstadoCita.ATENDIDA),
+            conteo.get(Cita.EstadoCita.CANCELADA),
+            conteo.get(Cita.EstadoCita.NO_ASISTIO)
+        );
+    }
+    
     /**
      * Clase interna para el resultado de operaciones
      */
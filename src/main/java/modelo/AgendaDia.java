@@ -0,0 +1,82 @@
+package modelo;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Agenda de un personal en un día: citas PENDIENTES por hora y su mapa de bits
+ * de bloques ocupados
+ *
+ * Las escrituras (reservar / liberar) las serializa RepositorioCitas con el
+ * bloqueo de la clave (personal, fecha); las lecturas no requieren bloqueo.
+ */
+final class AgendaDia {
+    
+    private final Map<LocalTime, Cita> citasPorHora = new ConcurrentHashMap<>();
+    
+    // Cantidad de citas por bloque (solo se modifica bajo el bloqueo de la clave)
+    private final int[] citasPorBloque = new int[DisponibilidadDia.BLOQUES_POR_DIA];
+    
+    // Bit encendido = bloque con al menos una cita pendiente
+    private final AtomicLongArray ocupados = new AtomicLongArray(DisponibilidadDia.PALABRAS);
+    
+    /**
+     * Asigna la hora a la cita si está libre
+     *
+     * @return true si la hora quedó asignada
+     */
+    boolean reservar(Cita cita) {
+        if (citasPorHora.putIfAbsent(cita.getHora(), cita) != null) {
+            return false;
+        }
+        
+        int bloque = DisponibilidadDia.bloque(cita.getHora());
+        if (citasPorBloque[bloque]++ == 0) {
+            int palabra = bloque >>> 6;
+            ocupados.set(palabra, ocupados.get(palabra) | (1L << bloque));
+        }
+        return true;
+    }
+    
+    /**
+     * Libera la hora si está asignada a la cita
+     */
+    void liberar(Cita cita) {
+        if (!citasPorHora.remove(cita.getHora(), cita)) {
+            return;
+        }
+        
+        int bloque = DisponibilidadDia.bloque(cita.getHora());
+        if (--citasPorBloque[bloque] == 0) {
+            int palabra = bloque >>> 6;
+            ocupados.set(palabra, ocupados.get(palabra) & ~(1L << bloque));
+        }
+    }
+    
+    boolean estaOcupado(LocalTime hora) {
+        return citasPorHora.containsKey(hora);
+    }
+    
+    List<LocalTime> obtenerHorasOcupadas() {
+        return new ArrayList<>(citasPorHora.keySet());
+    }
+    
+    boolean estaVacia() {
+        return citasPorHora.isEmpty();
+    }
+    
+    /**
+     * Copia de los bits de ocupación (dos palabras)
+     */
+    DisponibilidadDia obtenerDisponibilidad() {
+        long[] bits = new long[DisponibilidadDia.PALABRAS];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = ocupados.get(i);
+        }
+        return new DisponibilidadDia(bits);
+    }
+}
@@ -3,23 +3,34 @@ package modelo;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.util.Objects;
 
 /**
  * Clase que representa una cita en el sistema
  * Historia de Usuario: HU-01 Agendar cita en línea
+ *
+ * Una vez guardada en el repositorio en memoria, la cita solo puede cambiar
+ * de estado y motivo: código, servicio, personal, fecha y hora son claves de
+ * sus índices y los setters lanzan IllegalStateException si se intenta
+ * cambiarlos (para reprogramar, se cancela y se guarda una cita nueva).
  */
 public class Cita {
     
+    // Generador compartido por todas las citas (reemplazable)
+    private static volatile GeneradorCodigos generadorCodigos = new GeneradorCodigosTemporal();
+    
     private String codigo;
     private String servicio;
     private String personal;
     private LocalDate fecha;
     private LocalTime hora;
     private String motivo;
-    private EstadoCita estado;
+    private volatile EstadoCita estado;
     private LocalDateTime fechaCreacion;
     
+    // Observador interno (repositorio) que mantiene sus índices sincronizados
+    private ObservadorEstado observador;
+    
     // Constructor vacío
     public Cita() {
         this.estado = EstadoCita.PENDIENTE;
@@ -40,10 +51,17 @@ public class Cita {
     
     /**
      * Genera un código único para la cita
-     * Formato: CITA-XXXXXXXX
+     * Formato por defecto: CITA- + 13 caracteres base32 (ver GeneradorCodigosTemporal)
      */
     private String generarCodigo() {
-        return "CITA-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        return generadorCodigos.generar();
+    }
+    
+    /**
+     * Reemplaza el generador de códigos de las citas nuevas
+     */
+    public static void setGeneradorCodigos(GeneradorCodigos generador) {
+        generadorCodigos = Objects.requireNonNull(generador, "El generador de códigos no puede ser null");
     }
     
     /**
@@ -78,27 +96,63 @@ public class Cita {
     
     /**
      * Cancela la cita si cumple las reglas
+     * Sincronizado para que la verificación y el cambio de estado sean atómicos
+     *
+     * @return false si no se puede cancelar o si el repositorio no pudo registrar la cancelación
      */
-    public boolean cancelar() {
+    public synchronized boolean cancelar() {
         if (puedeCancelar()) {
-            this.estado = EstadoCita.CANCELADA;
-            return true;
+            return cambiarEstado(EstadoCita.CANCELADA);
         }
         return false;
     }
     
     /**
      * Marca la cita como atendida
+     *
+     * @throws IllegalStateException si el repositorio no pudo registrar el cambio
      */
     public void marcarAtendida() {
-        this.estado = EstadoCita.ATENDIDA;
+        cambiarEstadoObligatorio(EstadoCita.ATENDIDA);
     }
     
     /**
      * Marca la cita como no asistió
+     *
+     * @throws IllegalStateException si el repositorio no pudo registrar el cambio
      */
     public void marcarNoAsistio() {
-        this.estado = EstadoCita.NO_ASISTIO;
+        cambiarEstadoObligatorio(EstadoCita.NO_ASISTIO);
+    }
+    
+    /**
+     * Cambia el estado y notifica al observador si el estado es distinto
+     * Si el observador rechaza el cambio, la cita vuelve al estado anterior
+     *
+     * @return false si el cambio se rechazó
+     */
+    private synchronized boolean cambiarEstado(EstadoCita nuevoEstado) {
+        EstadoCita anterior = this.estado;
+        this.estado = nuevoEstado;
+        
+        if (observador != null && anterior != nuevoEstado && !observador.estadoCambiado(this, anterior)) {
+            this.estado = anterior;
+            return false;
+        }
+        return true;
+    }
+    
+    private void cambiarEstadoObligatorio(EstadoCita nuevoEstado) {
+        if (!cambiarEstado(nuevoEstado)) {
+            throw new IllegalStateException("No se pudo registrar el cambio de estado de la cita " + codigo);
+        }
+    }
+    
+    /**
+     * Asigna el observador interno (lo usa el repositorio al guardar la cita)
+     */
+    void setObservador(ObservadorEstado observador) {
+        this.observador = observador;
     }
     
     // Getters y Setters
@@ -107,6 +161,7 @@ public class Cita {
     }
     
     public void setCodigo(String codigo) {
+        verificarModificable(this.codigo, codigo);
         this.codigo = codigo;
     }
     
@@ -115,6 +170,7 @@ public class Cita {
     }
     
     public void setServicio(String servicio) {
+        verificarModificable(this.servicio, servicio);
         this.servicio = servicio;
     }
     
@@ -123,6 +179,7 @@ public class Cita {
     }
     
     public void setPersonal(String personal) {
+        verificarModificable(this.personal, personal);
         this.personal = personal;
     }
     
@@ -131,6 +188,7 @@ public class Cita {
     }
     
     public void setFecha(LocalDate fecha) {
+        verificarModificable(this.fecha, fecha);
         this.fecha = fecha;
     }
     
@@ -139,6 +197,7 @@ public class Cita {
     }
     
     public void setHora(LocalTime hora) {
+        verificarModificable(this.hora, hora);
         this.hora = hora;
     }
     
@@ -154,14 +213,32 @@ public class Cita {
         return estado;
     }
     
+    /**
+     * @throws IllegalStateException si el repositorio no pudo registrar el cambio
+     */
     public void setEstado(EstadoCita estado) {
-        this.estado = estado;
+        cambiarEstadoObligatorio(estado);
     }
     
     public LocalDateTime getFechaCreacion() {
         return fechaCreacion;
     }
     
+    void setFechaCreacion(LocalDateTime fechaCreacion) {
+        this.fechaCreacion = fechaCreacion;
+    }
+    
+    /**
+     * Rechaza el cambio de una clave de los índices si la cita ya está guardada
+     * (asignar el mismo valor está permitido)
+     */
+    private void verificarModificable(Object actual, Object nuevo) {
+        if (observador != null && !Objects.equals(actual, nuevo)) {
+            throw new IllegalStateException("La cita " + codigo + " ya está guardada: no se puede cambiar su "
+                    + "código, servicio, personal, fecha ni hora");
+        }
+    }
+    
     @Override
     public String toString() {
         return "Cita{" +
@@ -174,6 +251,18 @@ public class Cita {
                 '}';
     }
     
+    /**
+     * Observador interno de cambios de estado
+     * Permite que el repositorio actualice sus índices sin recorrer todas las citas
+     */
+    interface ObservadorEstado {
+        
+        /**
+         * @return false si el cambio no se pudo registrar (la cita vuelve al estado anterior)
+         */
+        boolean estadoCambiado(Cita cita, EstadoCita anterior);
+    }
+    
     /**
      * Enum para los estados posibles de una cita
      */
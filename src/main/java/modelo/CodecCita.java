@@ -0,0 +1,143 @@
+package modelo;
+
+import org.bson.BsonDateTime;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+/**
+ * Codec BSON de Cita, sin DTO ni mapeo por reflexión
+ *
+ * Formato del documento:
+ * - codigo, servicio, personal, motivo, estado: texto (estado es el nombre del enum)
+ * - fecha: fecha BSON a las 00:00 UTC del día
+ * - hora: entero con los minutos desde las 00:00 (600 = 10:00)
+ * - fechaCreacion: fecha BSON (la hora local se guarda como UTC)
+ *
+ * Las fechas y horas nativas ocupan menos que el texto, se comparan por rango
+ * sin depender del formato y no hay que parsearlas al leer. Los documentos
+ * antiguos, con fecha, hora y fechaCreacion como texto ISO, se siguen leyendo.
+ */
+final class CodecCita implements Codec<Cita> {
+    
+    /**
+     * Valor BSON de una fecha (para filtros y actualizaciones)
+     */
+    static BsonDateTime valorFecha(LocalDate fecha) {
+        return new BsonDateTime(fecha.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli());
+    }
+    
+    /**
+     * Valor BSON de una hora: minutos desde las 00:00 (se descartan los segundos)
+     */
+    static int valorHora(LocalTime hora) {
+        return hora.getHour() * 60 + hora.getMinute();
+    }
+    
+    /**
+     * Lee el campo hora de un documento (minutos o texto ISO de los documentos antiguos)
+     */
+    static LocalTime leerHora(BsonValue valor) {
+        return valor.isString()
+            ? LocalTime.parse(valor.asString().getValue())
+            : horaDe(valor.asInt32().getValue());
+    }
+    
+    private static LocalTime horaDe(int minutos) {
+        return LocalTime.ofSecondOfDay(minutos * 60L);
+    }
+    
+    @Override
+    public void encode(BsonWriter writer, Cita cita, EncoderContext contexto) {
+        writer.writeStartDocument();
+        escribirTexto(writer, "codigo", cita.getCodigo());
+        escribirTexto(writer, "servicio", cita.getServicio());
+        escribirTexto(writer, "personal", cita.getPersonal());
+        if (cita.getFecha() != null) {
+            writer.writeDateTime("fecha", valorFecha(cita.getFecha()).getValue());
+        }
+        if (cita.getHora() != null) {
+            writer.writeInt32("hora", valorHora(cita.getHora()));
+        }
+        escribirTexto(writer, "motivo", cita.getMotivo());
+        if (cita.getEstado() != null) {
+            writer.writeString("estado", cita.getEstado().name());
+        }
+        if (cita.getFechaCreacion() != null) {
+            writer.writeDateTime("fechaCreacion", cita.getFechaCreacion().toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+        writer.writeEndDocument();
+    }
+    
+    @Override
+    public Cita decode(BsonReader reader, DecoderContext contexto) {
+        Cita cita = new Cita();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String campo = reader.readName();
+            BsonType tipo = reader.getCurrentBsonType();
+            if (tipo == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (campo) {
+                case "codigo":
+                    cita.setCodigo(reader.readString());
+                    break;
+                case "servicio":
+                    cita.setServicio(reader.readString());
+                    break;
+                case "personal":
+                    cita.setPersonal(reader.readString());
+                    break;
+                case "motivo":
+                    cita.setMotivo(reader.readString());
+                    break;
+                case "estado":
+                    cita.setEstado(Cita.EstadoCita.valueOf(reader.readString()));
+                    break;
+                case "fecha":
+                    cita.setFecha(tipo == BsonType.STRING
+                        ? LocalDate.parse(reader.readString())
+                        : LocalDate.ofEpochDay(Math.floorDiv(reader.readDateTime(), 86_400_000L)));
+                    break;
+                case "hora":
+                    cita.setHora(tipo == BsonType.STRING
+                        ? LocalTime.parse(reader.readString())
+                        : horaDe(reader.readInt32()));
+                    break;
+                case "fechaCreacion":
+                    cita.setFechaCreacion(tipo == BsonType.STRING
+                        ? LocalDateTime.parse(reader.readString())
+                        : LocalDateTime.ofInstant(Instant.ofEpochMilli(reader.readDateTime()), ZoneOffset.UTC));
+                    break;
+                default:
+                    // _id y campos desconocidos
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return cita;
+    }
+    
+    @Override
+    public Class<Cita> getEncoderClass() {
+        return Cita.class;
+    }
+    
+    private static void escribirTexto(BsonWriter writer, String campo, String valor) {
+        if (valor != null) {
+            writer.writeString(campo, valor);
+        }
+    }
+}
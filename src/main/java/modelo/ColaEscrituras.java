@@ -0,0 +1,190 @@
+package modelo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cola de escrituras que se envían a la base de datos por lotes
+ *
+ * Quien encola recibe un CompletableFuture con el resultado de su operación.
+ * Un hilo escritor vacía la cola cuando junta tamanoMaximo operaciones o
+ * cuando la más antigua lleva esperaMaxima milisegundos encolada, así que
+ * muchas escrituras seguidas comparten un viaje a la base de datos y una
+ * escritura suelta espera como mucho esperaMaxima.
+ */
+final class ColaEscrituras<T> implements AutoCloseable {
+    
+    /**
+     * Escribe un lote de operaciones
+     */
+    @FunctionalInterface
+    interface Escritor<T> {
+        
+        /**
+         * @param errores Se llena, por operación, con la excepción si su escritura
+         *                falló (las demás operaciones del lote se informan igual)
+         * @return Un resultado por operación, en el mismo orden (true si se aplicó)
+         */
+        boolean[] escribir(List<T> operaciones, RuntimeException[] errores);
+    }
+    
+    private final Escritor<T> escritor;
+    private final int tamanoMaximo;
+    private final long esperaMaxima;
+    private final List<T> pendientes = new ArrayList<>();
+    private final List<CompletableFuture<Boolean>> resultados = new ArrayList<>();
+    private final Thread hilo;
+    
+    private long encoladas;
+    private long escritas;
+    private long primeraPendiente;
+    private boolean urgente;
+    private boolean cerrada;
+    
+    ColaEscrituras(String nombre, int tamanoMaximo, long esperaMaxima, Escritor<T> escritor) {
+        if (tamanoMaximo <= 0 || esperaMaxima < 0) {
+            throw new IllegalArgumentException("Tamaño o espera de lote inválidos");
+        }
+        this.escritor = escritor;
+        this.tamanoMaximo = tamanoMaximo;
+        this.esperaMaxima = esperaMaxima;
+        this.hilo = new Thread(this::escribirLotes, nombre);
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+    
+    /**
+     * Encola una operación
+     *
+     * @return Resultado de la operación cuando se escriba su lote (falla si
+     *         su escritura o la del lote entero no pudo hacerse)
+     */
+    synchronized CompletableFuture<Boolean> encolar(T operacion) {
+        if (cerrada) {
+            throw new IllegalStateException("La cola de escrituras está cerrada");
+        }
+        if (pendientes.isEmpty()) {
+            primeraPendiente = System.currentTimeMillis();
+        }
+        CompletableFuture<Boolean> resultado = new CompletableFuture<>();
+        pendientes.add(operacion);
+        resultados.add(resultado);
+        encoladas++;
+        if (pendientes.size() >= tamanoMaximo) {
+            notifyAll();
+        }
+        return resultado;
+    }
+    
+    /**
+     * Escribe ya lo encolado hasta ahora y espera a que termine
+     */
+    synchronized void vaciar() {
+        long turno = encoladas;
+        urgente = true;
+        notifyAll();
+        while (escritas < turno) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrumpido esperando la cola de escrituras", e);
+            }
+        }
+    }
+    
+    /**
+     * Cantidad de operaciones encoladas que aún no se escribieron
+     */
+    synchronized int pendientes() {
+        return pendientes.size();
+    }
+    
+    /**
+     * Escribe lo pendiente y detiene el hilo escritor
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            cerrada = true;
+            notifyAll();
+        }
+        try {
+            hilo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // ==================== HILO ESCRITOR ====================
+    
+    private void escribirLotes() {
+        while (true) {
+            List<T> lote;
+            List<CompletableFuture<Boolean>> futuros;
+            synchronized (this) {
+                while (!listo()) {
+                    try {
+                        if (pendientes.isEmpty()) {
+                            wait();
+                        } else {
+                            wait(Math.max(1, primeraPendiente + esperaMaxima - System.currentTimeMillis()));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pendientes.isEmpty()) {
+                    return;
+                }
+                int tamano = Math.min(tamanoMaximo, pendientes.size());
+                lote = new ArrayList<>(pendientes.subList(0, tamano));
+                futuros = new ArrayList<>(resultados.subList(0, tamano));
+                pendientes.subList(0, tamano).clear();
+                resultados.subList(0, tamano).clear();
+                primeraPendiente = System.currentTimeMillis();
+                if (pendientes.isEmpty()) {
+                    urgente = false;
+                }
+            }
+            
+            completar(lote, futuros);
+            
+            synchronized (this) {
+                escritas += lote.size();
+                notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Hay un lote para escribir (o la cola cerrada ya no tiene pendientes)
+     */
+    private boolean listo() {
+        if (pendientes.isEmpty()) {
+            return cerrada;
+        }
+        return urgente || cerrada
+            || pendientes.size() >= tamanoMaximo
+            || System.currentTimeMillis() - primeraPendiente >= esperaMaxima;
+    }
+    
+    private void completar(List<T> lote, List<CompletableFuture<Boolean>> futuros) {
+        try {
+            RuntimeException[] errores = new RuntimeException[lote.size()];
+            boolean[] aplicadas = escritor.escribir(lote, errores);
+            for (int i = 0; i < futuros.size(); i++) {
+                if (errores[i] != null) {
+                    futuros.get(i).completeExceptionally(errores[i]);
+                } else {
+                    futuros.get(i).complete(aplicadas[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("❌ Error al escribir lote: " + e.getMessage());
+            futuros.forEach(futuro -> futuro.completeExceptionally(e));
+        }
+    }
+}
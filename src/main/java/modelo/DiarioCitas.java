@@ -0,0 +1,506 @@
+package modelo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Diario de escritura anticipada (write-ahead log) para RepositorioCitas
+ *
+ * Cada alta, cambio de estado y limpieza se anexa como un registro
+ * [longitud][crc32][datos]. Un hilo escritor agrupa los registros pendientes y
+ * hace un único fsync por lote (group commit): quien escribe espera solo a que
+ * su lote sea durable, y muchas escrituras concurrentes comparten un fsync.
+ *
+ * Al abrir el diario se reproducen los registros válidos a partir de la
+ * posición que cubre la última instantánea (ver InstantaneaCitas); un registro
+ * final incompleto (corte de energía a mitad de escritura) se descarta.
+ *
+ * Las posiciones son lógicas: cuentan los bytes anexados desde que se creó el
+ * diario. El archivo empieza con [magia][base], la posición lógica de su primer
+ * registro; compactar() copia la cola desde una posición a un archivo nuevo con
+ * esa base y lo renombra de forma atómica, así que el diario no crece sin
+ * límite y las posiciones guardadas en las instantáneas siguen valiendo.
+ * Un archivo sin cabecera (formato anterior) tiene base 0.
+ */
+final class DiarioCitas implements AutoCloseable {
+    
+    private static final byte ALTA = 1;
+    private static final byte ESTADO = 2;
+    private static final byte LIMPIAR = 3;
+    private static final int CABECERA = 8;
+    private static final int MAGIA = 0x44494152; // "DIAR"
+    private static final int CABECERA_ARCHIVO = 12;
+    
+    private final Path archivo;
+    private final List<byte[]> pendientes = new ArrayList<>();
+    private final Thread escritor;
+    
+    // Solo los usa el hilo escritor (y close, cuando el escritor terminó)
+    private FileChannel canal;
+    private long base;
+    private int inicio;
+    
+    private long encolados;
+    private long durables;
+    private long posicionDurable;
+    private long compactarDesde = -1;
+    private boolean cerrado;
+    private IOException error;
+    
+    private DiarioCitas(Path archivo, FileChannel canal, long base, int inicio) throws IOException {
+        this.archivo = archivo;
+        this.canal = canal;
+        this.base = base;
+        this.inicio = inicio;
+        this.posicionDurable = base + canal.size() - inicio;
+        this.escritor = new Thread(this::escribirLotes, "diario-citas");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+    
+    /**
+     * Abre (o crea) el diario y aplica sus registros sobre el repositorio
+     *
+     * @param desde Posición a partir de la cual reproducir (0 para todo el diario)
+     */
+    static DiarioCitas abrir(Path archivo, RepositorioCitas repositorio, long desde) throws IOException {
+        FileChannel canal = FileChannel.open(archivo,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long base = 0;
+        int inicio = 0;
+        if (canal.size() == 0) {
+            escribirCabecera(canal, 0);
+            inicio = CABECERA_ARCHIVO;
+        } else {
+            ByteBuffer cabecera = ByteBuffer.allocate(CABECERA_ARCHIVO);
+            if (leerCompleto(canal, cabecera, 0) == CABECERA_ARCHIVO && cabecera.getInt(0) == MAGIA) {
+                base = cabecera.getLong(4);
+                inicio = CABECERA_ARCHIVO;
+            }
+        }
+        if (desde < base) {
+            canal.close();
+            throw new IOException("El diario empieza en la posición " + base
+                    + " y no hay una instantánea que cubra lo anterior");
+        }
+        
+        long valido = reproducir(canal, Math.min(inicio + desde - base, canal.size()), repositorio);
+        
+        // Descartar un posible registro final incompleto
+        canal.truncate(valido);
+        canal.position(valido);
+        return new DiarioCitas(archivo, canal, base, inicio);
+    }
+    
+    /**
+     * Reproduce los registros a partir de una posición
+     *
+     * @return Posición del final del último registro válido
+     */
+    static long reproducir(FileChannel canal, long desde, RepositorioCitas repositorio) throws IOException {
+        long posicion = desde;
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+        
+        while (true) {
+            cabecera.clear();
+            if (leerCompleto(canal, cabecera, posicion) < CABECERA) {
+                return posicion;
+            }
+            cabecera.flip();
+            int longitud = cabecera.getInt();
+            int crc = cabecera.getInt();
+            if (longitud <= 0 || posicion + CABECERA + longitud > canal.size()) {
+                return posicion;
+            }
+            
+            ByteBuffer datos = ByteBuffer.allocate(longitud);
+            leerCompleto(canal, datos, posicion + CABECERA);
+            if (crc32(datos.array()) != crc) {
+                return posicion;
+            }
+            
+            aplicar(datos.array(), repositorio);
+            posicion += CABECERA + longitud;
+        }
+    }
+    
+    // ==================== REGISTROS ====================
+    
+    /**
+     * Anexa el alta de una cita
+     *
+     * @return Turno a esperar con esperar() para que el registro sea durable
+     */
+    long registrarAlta(Cita cita) {
+        return anexar(codificar(salida -> {
+            salida.writeByte(ALTA);
+            escribirCita(salida, cita);
+        }));
+    }
+    
+    long registrarEstado(Cita cita) {
+        return anexar(codificar(salida -> {
+            salida.writeByte(ESTADO);
+            salida.writeUTF(cita.getCodigo());
+            salida.writeByte(cita.getEstado().ordinal());
+        }));
+    }
+    
+    long registrarLimpieza() {
+        return anexar(codificar(salida -> salida.writeByte(LIMPIAR)));
+    }
+    
+    /**
+     * Espera a que el registro del turno indicado esté en disco
+     */
+    synchronized void esperar(long turno) {
+        while (durables < turno && error == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrumpido esperando el diario", e);
+            }
+        }
+        if (durables < turno) {
+            throw new UncheckedIOException(error);
+        }
+    }
+    
+    /**
+     * Espera a que todo lo anexado hasta ahora esté en disco
+     *
+     * @return Posición del diario que incluye todos esos registros
+     */
+    long sincronizar() {
+        long turno;
+        synchronized (this) {
+            turno = encolados;
+        }
+        esperar(turno);
+        synchronized (this) {
+            return posicionDurable;
+        }
+    }
+    
+    /**
+     * Quita del diario los registros anteriores a una posición (que ya cubre
+     * una instantánea durable) y espera a que el archivo nuevo esté en su lugar
+     * Si no se puede compactar, el diario sigue igual y se vuelve a intentar
+     * en la próxima llamada.
+     *
+     * @param desde Posición devuelta por sincronizar() al tomar esa instantánea
+     */
+    void compactar(long desde) {
+        synchronized (this) {
+            while (compactarDesde >= 0 && error == null) {
+                esperarCompactacion();
+            }
+            if (cerrado || error != null || desde <= base || desde > posicionDurable) {
+                return;
+            }
+            compactarDesde = desde;
+            notifyAll();
+            while (compactarDesde >= 0 && error == null) {
+                esperarCompactacion();
+            }
+        }
+    }
+    
+    private void esperarCompactacion() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido compactando el diario", e);
+        }
+    }
+    
+    /**
+     * Cantidad de registros anexados desde que se abrió el diario
+     */
+    synchronized long registrosAnexados() {
+        return encolados;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            cerrado = true;
+            notifyAll();
+        }
+        try {
+            escritor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        canal.close();
+    }
+    
+    private synchronized long anexar(byte[] registro) {
+        if (cerrado) {
+            throw new IllegalStateException("El diario está cerrado");
+        }
+        pendientes.add(registro);
+        notifyAll();
+        return ++encolados;
+    }
+    
+    // ==================== HILO ESCRITOR ====================
+    
+    private void escribirLotes() {
+        while (true) {
+            List<byte[]> lote;
+            long hasta;
+            long compactacion;
+            synchronized (this) {
+                while (pendientes.isEmpty() && compactarDesde < 0 && !cerrado) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                compactacion = compactarDesde;
+                if (pendientes.isEmpty() && compactacion < 0) {
+                    return;
+                }
+                lote = new ArrayList<>(pendientes);
+                pendientes.clear();
+                hasta = encolados;
+            }
+            
+            if (compactacion >= 0) {
+                // Entre lotes el final del archivo es la posición durable
+                boolean seguir = compactarArchivo(compactacion);
+                synchronized (this) {
+                    compactarDesde = -1;
+                    notifyAll();
+                }
+                if (!seguir) {
+                    return;
+                }
+                if (lote.isEmpty()) {
+                    continue;
+                }
+            }
+            
+            long escritos = 0;
+            try {
+                for (byte[] registro : lote) {
+                    ByteBuffer buffer = ByteBuffer.allocate(CABECERA + registro.length);
+                    buffer.putInt(registro.length).putInt(crc32(registro)).put(registro).flip();
+                    escritos += buffer.remaining();
+                    while (buffer.hasRemaining()) {
+                        canal.write(buffer);
+                    }
+                }
+                // Un solo fsync para todo el lote
+                canal.force(false);
+            
+            } catch (IOException e) {
+                System.err.println("❌ Error al escribir el diario de citas: " + e.getMessage());
+                synchronized (this) {
+                    error = e;
+                    notifyAll();
+                }
+                return;
+            }
+            
+            synchronized (this) {
+                durables = hasta;
+                posicionDurable += escritos;
+                notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Copia los registros desde la posición indicada a un archivo temporal
+     * con esa base y lo pone en lugar del diario
+     *
+     * @return false si el diario quedó inutilizable
+     */
+    private boolean compactarArchivo(long desde) {
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        FileChannel nuevo = null;
+        try {
+            nuevo = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            escribirCabecera(nuevo, desde);
+            long origen = inicio + desde - base;
+            long restante = canal.size() - origen;
+            while (restante > 0) {
+                long copiados = canal.transferTo(origen, restante, nuevo);
+                origen += copiados;
+                restante -= copiados;
+            }
+            nuevo.force(true);
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // El diario anterior sigue intacto
+            System.err.println("⚠️ No se pudo compactar el diario de citas: " + e.getMessage());
+            cerrarSinError(nuevo);
+            return true;
+        }
+        
+        cerrarSinError(canal);
+        canal = nuevo;
+        base = desde;
+        inicio = CABECERA_ARCHIVO;
+        try {
+            canal.position(canal.size());
+        } catch (IOException e) {
+            System.err.println("❌ Error al escribir el diario de citas: " + e.getMessage());
+            synchronized (this) {
+                error = e;
+                notifyAll();
+            }
+            return false;
+        }
+        return true;
+    }
+    
+    private static void escribirCabecera(FileChannel canal, long base) throws IOException {
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA_ARCHIVO).putInt(MAGIA).putLong(base);
+        cabecera.flip();
+        while (cabecera.hasRemaining()) {
+            canal.write(cabecera, cabecera.position());
+        }
+        canal.force(true);
+        canal.position(CABECERA_ARCHIVO);
+    }
+    
+    private static void cerrarSinError(FileChannel canal) {
+        if (canal == null) {
+            return;
+        }
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // Ya no se usa
+        }
+    }
+    
+    // ==================== CODIFICACIÓN ====================
+    
+    private static void aplicar(byte[] datos, RepositorioCitas repositorio) throws IOException {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(datos));
+        byte tipo = entrada.readByte();
+        switch (tipo) {
+            case ALTA:
+                repositorio.guardar(leerCita(entrada));
+                break;
+            case ESTADO:
+                Cita cita = repositorio.buscarPorCodigo(entrada.readUTF());
+                Cita.EstadoCita estado = Cita.EstadoCita.values()[entrada.readByte()];
+                if (cita != null) {
+                    try {
+                        cita.setEstado(estado);
+                    } catch (IllegalStateException e) {
+                        System.err.println("⚠️ No se pudo reproducir el cambio de estado: " + e.getMessage());
+                    }
+                }
+                break;
+            case LIMPIAR:
+                repositorio.limpiar();
+                break;
+            default:
+                throw new IOException("Tipo de registro desconocido: " + tipo);
+        }
+    }
+    
+    static void escribirCita(DataOutputStream salida, Cita cita) throws IOException {
+        salida.writeUTF(cita.getCodigo());
+        escribirTexto(salida, cita.getServicio());
+        escribirTexto(salida, cita.getPersonal());
+        salida.writeLong(cita.getFecha() != null ? cita.getFecha().toEpochDay() : Long.MIN_VALUE);
+        salida.writeLong(cita.getHora() != null ? cita.getHora().toNanoOfDay() : -1L);
+        escribirTexto(salida, cita.getMotivo());
+        salida.writeByte(cita.getEstado().ordinal());
+        salida.writeLong(cita.getFechaCreacion() != null
+                ? cita.getFechaCreacion().toInstant(ZoneOffset.UTC).toEpochMilli()
+                : Long.MIN_VALUE);
+    }
+    
+    static Cita leerCita(DataInputStream entrada) throws IOException {
+        Cita cita = new Cita();
+        cita.setCodigo(entrada.readUTF());
+        cita.setServicio(leerTexto(entrada));
+        cita.setPersonal(leerTexto(entrada));
+        long dia = entrada.readLong();
+        cita.setFecha(dia != Long.MIN_VALUE ? LocalDate.ofEpochDay(dia) : null);
+        long nanos = entrada.readLong();
+        cita.setHora(nanos >= 0 ? LocalTime.ofNanoOfDay(nanos) : null);
+        cita.setMotivo(leerTexto(entrada));
+        cita.setEstado(Cita.EstadoCita.values()[entrada.readByte()]);
+        long creacion = entrada.readLong();
+        if (creacion != Long.MIN_VALUE) {
+            cita.setFechaCreacion(LocalDateTime.ofInstant(Instant.ofEpochMilli(creacion), ZoneOffset.UTC));
+        }
+        return cita;
+    }
+    
+    private static void escribirTexto(DataOutputStream salida, String texto) throws IOException {
+        salida.writeBoolean(texto != null);
+        if (texto != null) {
+            salida.writeUTF(texto);
+        }
+    }
+    
+    private static String leerTexto(DataInputStream entrada) throws IOException {
+        return entrada.readBoolean() ? entrada.readUTF() : null;
+    }
+    
+    private static byte[] codificar(Escritura escritura) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream salida = new DataOutputStream(bytes);
+            escritura.escribir(salida);
+            salida.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static int crc32(byte[] datos) {
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        return (int) crc.getValue();
+    }
+    
+    private static int leerCompleto(FileChannel canal, ByteBuffer buffer, long posicion) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int leidos = canal.read(buffer, posicion + total);
+            if (leidos < 0) {
+                break;
+            }
+            total += leidos;
+        }
+        return total;
+    }
+    
+    private interface Escritura {
+        void escribir(DataOutputStream salida) throws IOException;
+    }
+}
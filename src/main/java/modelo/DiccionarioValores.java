@@ -0,0 +1,71 @@
+package modelo;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Diccionario de valores repetidos (servicio, personal)
+ * Asigna un identificador entero a cada texto distinto y devuelve siempre la
+ * misma instancia de String, de modo que miles de citas comparten unas pocas
+ * cadenas en lugar de guardar cada una su propia copia.
+ */
+final class DiccionarioValores {
+    
+    private final Map<String, Integer> identificadores = new ConcurrentHashMap<>();
+    private volatile String[] valores = new String[16];
+    private int cantidad;
+    
+    /**
+     * Obtiene el identificador del valor, registrándolo si es nuevo
+     */
+    int identificador(String valor) {
+        if (valor == null) {
+            return -1;
+        }
+        Integer id = identificadores.get(valor);
+        if (id != null) {
+            return id;
+        }
+        return registrar(valor);
+    }
+    
+    /**
+     * Obtiene el identificador de un valor ya registrado, o -2 si no existe
+     */
+    int buscar(String valor) {
+        if (valor == null) {
+            return -1;
+        }
+        Integer id = identificadores.get(valor);
+        return id != null ? id : -2;
+    }
+    
+    /**
+     * Obtiene el valor asociado a un identificador
+     */
+    String valor(int identificador) {
+        return identificador < 0 ? null : valores[identificador];
+    }
+    
+    /**
+     * Obtiene la instancia canónica del valor
+     */
+    String canonico(String valor) {
+        return valor(identificador(valor));
+    }
+    
+    private synchronized int registrar(String valor) {
+        Integer id = identificadores.get(valor);
+        if (id != null) {
+            return id;
+        }
+        if (cantidad == valores.length) {
+            valores = Arrays.copyOf(valores, cantidad * 2);
+        }
+        // Publicar el valor antes que el identificador para que las lecturas sin bloqueo lo vean
+        valores[cantidad] = valor;
+        identificadores.put(valor, cantidad);
+        return cantidad++;
+    }
+}
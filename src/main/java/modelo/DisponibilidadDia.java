@@ -0,0 +1,108 @@
+package modelo;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Mapa de bits de disponibilidad de un personal en un día
+ * Historia de Usuario: HU-02 Consultar disponibilidad en tiempo real
+ *
+ * El día se divide en 96 bloques de 15 minutos (dos palabras de 64 bits).
+ * Un bit encendido indica que el bloque tiene al menos una cita PENDIENTE,
+ * así que consultar los horarios libres de un rango son operaciones sobre
+ * palabras en lugar de comparar horas cita por cita.
+ */
+public final class DisponibilidadDia {
+    
+    public static final int MINUTOS_POR_BLOQUE = 15;
+    public static final int BLOQUES_POR_DIA = 24 * 60 / MINUTOS_POR_BLOQUE;
+    static final int PALABRAS = (BLOQUES_POR_DIA + 63) / 64;
+    
+    private final long[] ocupados;
+    
+    DisponibilidadDia(long[] ocupados) {
+        this.ocupados = ocupados;
+    }
+    
+    /**
+     * Disponibilidad de un día sin citas
+     */
+    public static DisponibilidadDia libre() {
+        return new DisponibilidadDia(new long[PALABRAS]);
+    }
+    
+    /**
+     * Construye la disponibilidad a partir de una lista de horarios ocupados
+     */
+    public static DisponibilidadDia desdeHorarios(Collection<LocalTime> horariosOcupados) {
+        long[] bits = new long[PALABRAS];
+        for (LocalTime hora : horariosOcupados) {
+            int bloque = bloque(hora);
+            bits[bloque >>> 6] |= 1L << bloque;
+        }
+        return new DisponibilidadDia(bits);
+    }
+    
+    /**
+     * Índice del bloque de 15 minutos que contiene la hora
+     */
+    static int bloque(LocalTime hora) {
+        return (hora.getHour() * 60 + hora.getMinute()) / MINUTOS_POR_BLOQUE;
+    }
+    
+    /**
+     * Verifica si el bloque que contiene la hora está libre
+     */
+    public boolean estaLibre(LocalTime hora) {
+        int bloque = bloque(hora);
+        return (ocupados[bloque >>> 6] & (1L << bloque)) == 0;
+    }
+    
+    /**
+     * Obtiene el inicio de los bloques libres en el rango [desde, hasta)
+     */
+    public List<LocalTime> obtenerHorariosLibres(LocalTime desde, LocalTime hasta) {
+        List<LocalTime> libres = new ArrayList<>();
+        int inicio = bloque(desde);
+        int fin = hasta.equals(LocalTime.MIN) ? BLOQUES_POR_DIA : bloque(hasta);
+        
+        for (int palabra = 0; palabra < PALABRAS; palabra++) {
+            long bits = mascara(palabra, inicio, fin) & ~ocupados[palabra];
+            while (bits != 0) {
+                int bloque = palabra * 64 + Long.numberOfTrailingZeros(bits);
+                libres.add(LocalTime.MIN.plusMinutes((long) bloque * MINUTOS_POR_BLOQUE));
+                bits &= bits - 1;
+            }
+        }
+        return libres;
+    }
+    
+    /**
+     * Cuenta los bloques libres en el rango [desde, hasta)
+     */
+    public int contarLibres(LocalTime desde, LocalTime hasta) {
+        int inicio = bloque(desde);
+        int fin = hasta.equals(LocalTime.MIN) ? BLOQUES_POR_DIA : bloque(hasta);
+        int libres = 0;
+        for (int palabra = 0; palabra < PALABRAS; palabra++) {
+            libres += Long.bitCount(mascara(palabra, inicio, fin) & ~ocupados[palabra]);
+        }
+        return libres;
+    }
+    
+    /**
+     * Máscara con los bits [inicio, fin) que caen en la palabra indicada
+     */
+    private static long mascara(int palabra, int inicio, int fin) {
+        int desde = Math.max(inicio - palabra * 64, 0);
+        int hasta = Math.min(fin - palabra * 64, 64);
+        if (desde >= hasta) {
+            return 0L;
+        }
+        long alto = hasta == 64 ? -1L : (1L << hasta) - 1;
+        long bajo = (1L << desde) - 1;
+        return alto & ~bajo;
+    }
+}
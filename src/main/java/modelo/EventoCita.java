@@ -0,0 +1,92 @@
+package modelo;
+
+/**
+ * Cambio en las citas de un repositorio, publicado a los OyenteCitas
+ */
+public class EventoCita {
+    
+    /**
+     * Tipo de cambio
+     */
+    public enum Tipo {
+        CREADA,
+        CANCELADA,
+        ESTADO_CAMBIADO,
+        /** Cambiaron otros datos (fecha, hora, personal, servicio o motivo) */
+        ACTUALIZADA,
+        ELIMINADA
+    }
+    
+    private final Tipo tipo;
+    private final Cita cita;
+    private final Cita.EstadoCita estadoAnterior;
+    private final Cita citaAnterior;
+    
+    public EventoCita(Tipo tipo, Cita cita, Cita.EstadoCita estadoAnterior) {
+        this(tipo, cita, estadoAnterior, null);
+    }
+    
+    private EventoCita(Tipo tipo, Cita cita, Cita.EstadoCita estadoAnterior, Cita citaAnterior) {
+        this.tipo = tipo;
+        this.cita = cita;
+        this.estadoAnterior = estadoAnterior;
+        this.citaAnterior = citaAnterior;
+    }
+    
+    static EventoCita creada(Cita cita) {
+        return new EventoCita(Tipo.CREADA, cita, null);
+    }
+    
+    /**
+     * Evento de un cambio de estado (CANCELADA si el nuevo estado es CANCELADA)
+     */
+    static EventoCita estadoCambiado(Cita cita, Cita.EstadoCita anterior) {
+        Tipo tipo = cita.getEstado() == Cita.EstadoCita.CANCELADA ? Tipo.CANCELADA : Tipo.ESTADO_CAMBIADO;
+        return new EventoCita(tipo, cita, anterior);
+    }
+    
+    /**
+     * Evento de una edición: lleva también la versión anterior, para que quien
+     * dependa de la fecha, la hora o el personal viejos también se actualice
+     */
+    static EventoCita actualizada(Cita cita, Cita anterior) {
+        return new EventoCita(Tipo.ACTUALIZADA, cita, anterior.getEstado(), anterior);
+    }
+    
+    /**
+     * Evento de una eliminación (la cita tal como estaba guardada)
+     */
+    static EventoCita eliminada(Cita cita) {
+        return new EventoCita(Tipo.ELIMINADA, cita, cita.getEstado());
+    }
+    
+    public Tipo getTipo() {
+        return tipo;
+    }
+    
+    /**
+     * Cita afectada, ya con su estado nuevo (en ELIMINADA, la cita eliminada)
+     */
+    public Cita getCita() {
+        return cita;
+    }
+    
+    /**
+     * Estado antes del cambio (null en CREADA)
+     */
+    public Cita.EstadoCita getEstadoAnterior() {
+        return estadoAnterior;
+    }
+    
+    /**
+     * Versión de la cita antes de una edición (null salvo en ACTUALIZADA)
+     */
+    public Cita getCitaAnterior() {
+        return citaAnterior;
+    }
+    
+    @Override
+    public String toString() {
+        return tipo + " " + cita.getCodigo() + (estadoAnterior != null ? " (antes " + estadoAnterior + ")" : "");
+    }
+}
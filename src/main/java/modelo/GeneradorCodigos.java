@@ -0,0 +1,16 @@
+package modelo;
+
+/**
+ * Estrategia para generar los códigos de las citas
+ * La implementación por defecto es GeneradorCodigosTemporal; se puede
+ * reemplazar con Cita.setGeneradorCodigos (por ejemplo, en pruebas)
+ */
+@FunctionalInterface
+public interface GeneradorCodigos {
+    
+    /**
+     * Genera un código nuevo
+     * Debe ser seguro llamarlo desde varios hilos a la vez
+     */
+    String generar();
+}
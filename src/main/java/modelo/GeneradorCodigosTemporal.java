@@ -0,0 +1,139 @@
+package modelo;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de códigos únicos por construcción: tiempo + nodo + secuencia
+ * 
+ * Cada código es un número de 64 bits:
+ * - 42 bits: milisegundos desde 2024-01-01 (alcanza para más de 130 años)
+ * - 10 bits: identificador del nodo (0-1023), distinto en cada instancia
+ * - 12 bits: secuencia dentro del mismo milisegundo (4096 por ms)
+ * 
+ * escrito en base32 (alfabeto de Crockford, sin I, L, O ni U) con 13
+ * caracteres: "CITA-" + 13 caracteres. Como el alfabeto está en orden
+ * ASCII, los códigos de un nodo se ordenan por fecha de creación.
+ * 
+ * El par (tiempo, secuencia) avanza con una sola operación compareAndSet,
+ * sin bloqueos ni números aleatorios por código. Si se agota la secuencia de
+ * un milisegundo, se toma el siguiente, así que nunca se repite un valor
+ * dentro del mismo nodo aunque el reloj retroceda.
+ * 
+ * Nodo: dos instancias con el mismo nodo pueden generar el mismo código.
+ * - Con varias instancias contra la misma base de datos, cada una DEBE fijar
+ *   un nodo distinto (0-1023) con la propiedad "citas.nodo" o la variable de
+ *   entorno CITAS_NODO.
+ * - Sin configurarlo, el nodo sale del nombre del equipo: es el mismo en cada
+ *   arranque, pero dos procesos en el mismo equipo (o dos equipos cuyos
+ *   nombres coincidan en esos 10 bits) comparten nodo.
+ * El índice único de "codigo" en MongoDB rechaza un código repetido en lugar
+ * de sobrescribir otra cita.
+ */
+public class GeneradorCodigosTemporal implements GeneradorCodigos {
+    
+    public static final String PREFIJO = "CITA-";
+    public static final int LONGITUD = PREFIJO.length() + 13;
+    
+    // Propiedad del sistema (o variable de entorno) para fijar el nodo cuando hay varias instancias
+    public static final String PROPIEDAD_NODO = "citas.nodo";
+    public static final String VARIABLE_NODO = "CITAS_NODO";
+    
+    private static final char[] ALFABETO = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final long EPOCA = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int BITS_NODO = 10;
+    private static final int BITS_SECUENCIA = 12;
+    private static final int MAXIMO_NODO = (1 << BITS_NODO) - 1;
+    
+    private final long nodo;
+    
+    // (milisegundos << BITS_SECUENCIA) | secuencia del último código emitido
+    private final AtomicLong ultimo = new AtomicLong();
+    
+    /**
+     * Usa el nodo configurado ("citas.nodo" o CITAS_NODO) o, si no hay, el del nombre del equipo
+     */
+    public GeneradorCodigosTemporal() {
+        this(nodoPorDefecto());
+    }
+    
+    public GeneradorCodigosTemporal(int nodo) {
+        if (nodo < 0 || nodo > MAXIMO_NODO) {
+            throw new IllegalArgumentException("El nodo debe estar entre 0 y " + MAXIMO_NODO + ": " + nodo);
+        }
+        this.nodo = nodo;
+    }
+    
+    @Override
+    public String generar() {
+        long ahora = (System.currentTimeMillis() - EPOCA) << BITS_SECUENCIA;
+        long anterior;
+        long siguiente;
+        do {
+            anterior = ultimo.get();
+            siguiente = Math.max(anterior + 1, ahora);
+        } while (!ultimo.compareAndSet(anterior, siguiente));
+        
+        long milis = siguiente >>> BITS_SECUENCIA;
+        long secuencia = siguiente & ((1L << BITS_SECUENCIA) - 1);
+        long valor = (milis << (BITS_NODO + BITS_SECUENCIA)) | (nodo << BITS_SECUENCIA) | secuencia;
+        return codificar(valor);
+    }
+    
+    /**
+     * Escribe "CITA-" y el valor en 13 dígitos base32 (5 bits cada uno)
+     */
+    private static String codificar(long valor) {
+        char[] codigo = new char[LONGITUD];
+        PREFIJO.getChars(0, PREFIJO.length(), codigo, 0);
+        for (int i = LONGITUD - 1; i >= PREFIJO.length(); i--) {
+            codigo[i] = ALFABETO[(int) (valor & 31)];
+            valor >>>= 5;
+        }
+        return new String(codigo);
+    }
+    
+    static int nodoPorDefecto() {
+        String configurado = System.getProperty(PROPIEDAD_NODO, System.getenv(VARIABLE_NODO));
+        if (configurado != null) {
+            try {
+                return Integer.parseInt(configurado.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Nodo inválido en " + PROPIEDAD_NODO + ": " + configurado, e);
+            }
+        }
+        return nodoDeEquipo(nombreEquipo());
+    }
+    
+    /**
+     * Nodo estable derivado del nombre del equipo (0 si no se conoce)
+     */
+    static int nodoDeEquipo(String equipo) {
+        if (equipo == null || equipo.isBlank()) {
+            return 0;
+        }
+        int hash = equipo.trim().toLowerCase(Locale.ROOT).hashCode();
+        // Mezclar los bits altos para que nombres parecidos no caigan en el mismo nodo
+        hash ^= hash >>> 16;
+        hash *= 0x45D9F3B;
+        hash ^= hash >>> 16;
+        return hash & MAXIMO_NODO;
+    }
+    
+    private static String nombreEquipo() {
+        String equipo = System.getenv("HOSTNAME");
+        if (equipo == null) {
+            equipo = System.getenv("COMPUTERNAME");
+        }
+        if (equipo == null) {
+            try {
+                equipo = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                System.err.println("⚠️ No se pudo obtener el nombre del equipo; se usa el nodo 0");
+            }
+        }
+        return equipo;
+    }
+}
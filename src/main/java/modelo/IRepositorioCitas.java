@@ -0,0 +1,168 @@
+package modelo;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Operaciones comunes de los repositorios de citas
+ * Implementaciones: RepositorioCitas (memoria / diario local),
+ * RepositorioCitasMongo (MongoDB) y RepositorioCitasCache (caché sobre otro repositorio)
+ */
+public interface IRepositorioCitas {
+    
+    /**
+     * Guarda una nueva cita
+     *
+     * @return true si se guardó, false si es inválida o el horario está ocupado
+     */
+    boolean guardar(Cita cita);
+    
+    /**
+     * Guarda un lote de citas, validándolo en una sola pasada
+     * (incluidos los conflictos entre citas del mismo lote)
+     *
+     * @return El resultado de cada cita, en el orden del lote
+     */
+    ResultadoLote guardarLote(List<Cita> lote);
+    
+    /**
+     * Busca una cita por código
+     *
+     * @return La cita encontrada o null si no existe
+     */
+    Cita buscarPorCodigo(String codigo);
+    
+    /**
+     * Obtiene todas las citas
+     */
+    List<Cita> obtenerTodas();
+    
+    /**
+     * Obtiene las citas de un personal
+     */
+    List<Cita> obtenerPorPersonal(String personal);
+    
+    /**
+     * Obtiene las citas de una fecha
+     */
+    List<Cita> obtenerPorFecha(LocalDate fecha);
+    
+    /**
+     * Obtiene las citas entre dos fechas (ambas inclusive), ordenadas por fecha y hora
+     */
+    List<Cita> obtenerPorRango(LocalDate desde, LocalDate hasta);
+    
+    /**
+     * Obtiene las citas de un servicio, ordenadas por fecha y hora
+     */
+    List<Cita> obtenerPorServicio(String servicio);
+    
+    /**
+     * Obtiene las citas de un servicio en una fecha, ordenadas por hora
+     */
+    List<Cita> obtenerPorServicioYFecha(String servicio, LocalDate fecha);
+    
+    /**
+     * Obtiene las citas de un servicio entre dos fechas (ambas inclusive), ordenadas por fecha y hora
+     */
+    List<Cita> obtenerPorServicioYRango(String servicio, LocalDate desde, LocalDate hasta);
+    
+    /**
+     * Obtiene las citas pendientes
+     */
+    List<Cita> obtenerPendientes();
+    
+    /**
+     * Obtiene las citas pendientes con más de 2 horas de anticipación
+     */
+    List<Cita> obtenerCancelables();
+    
+    /**
+     * Cancela una cita por código
+     *
+     * @return true si se canceló
+     */
+    boolean cancelarCita(String codigo);
+    
+    /**
+     * Verifica si un horario está ocupado por una cita pendiente
+     */
+    boolean estaOcupado(String personal, LocalDate fecha, LocalTime hora);
+    
+    /**
+     * Obtiene los horarios ocupados de un personal en una fecha
+     */
+    List<LocalTime> obtenerHorariosOcupados(String personal, LocalDate fecha);
+    
+    /**
+     * Obtiene la disponibilidad de un personal en una fecha como mapa de bits
+     */
+    DisponibilidadDia obtenerDisponibilidad(String personal, LocalDate fecha);
+    
+    /**
+     * Cuenta las citas en un estado
+     */
+    long contarPorEstado(Cita.EstadoCita estado);
+    
+    /**
+     * Obtiene el conteo de citas de todos los estados
+     */
+    Map<Cita.EstadoCita, Long> obtenerConteoPorEstado();
+    
+    /**
+     * Obtiene el conteo de citas de todos los estados restringido a un
+     * personal, un servicio y un rango de fechas (ambas inclusive); cada
+     * filtro en null no restringe
+     */
+    Map<Cita.EstadoCita, Long> obtenerConteoPorEstado(String personal, String servicio,
+                                                      LocalDate desde, LocalDate hasta);
+    
+    /**
+     * Obtiene la cantidad total de citas
+     */
+    long contarTotal();
+    
+    // ==================== EVENTOS ====================
+    
+    /**
+     * Registra un oyente que recibe las citas creadas, canceladas y con cambio
+     * de estado a través de este repositorio
+     */
+    void agregarOyente(OyenteCitas oyente);
+    
+    /**
+     * Quita un oyente registrado
+     */
+    void quitarOyente(OyenteCitas oyente);
+    
+    // ==================== RECORRIDOS Y PAGINACIÓN ====================
+    
+    /**
+     * Recorre todas las citas sin cargarlas antes en una lista
+     * Cerrar el stream (try-with-resources) libera los recursos del recorrido
+     */
+    Stream<Cita> streamTodas();
+    
+    /**
+     * Recorre las citas pendientes sin cargarlas antes en una lista
+     */
+    Stream<Cita> streamPendientes();
+    
+    /**
+     * Recorre las citas de un personal sin cargarlas antes en una lista
+     */
+    Stream<Cita> streamPorPersonal(String personal);
+    
+    /**
+     * Obtiene una página de citas en orden (fecha, hora, código)
+     *
+     * @param personal Personal a filtrar, o null para todos
+     * @param estado Estado a filtrar, o null para todos
+     * @param continuacion Continuación de la página anterior, o null para la primera
+     * @param tamano Cantidad máxima de citas de la página
+     */
+    PaginaCitas obtenerPagina(String personal, Cita.EstadoCita estado, String continuacion, int tamano);
+}
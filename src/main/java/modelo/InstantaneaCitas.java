@@ -0,0 +1,215 @@
+package modelo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Instantánea binaria del estado de RepositorioCitas
+ *
+ * Guarda todas las citas junto con la posición del diario que ya refleja, de
+ * modo que al iniciar basta con cargar la instantánea (mapeada en memoria con
+ * MappedByteBuffer) y reproducir solo la cola del diario.
+ *
+ * Formato: [magia][versión][posición del diario][cantidad][crc32 del cuerpo]
+ * seguido de una cita por registro. Se escribe en un archivo temporal y se
+ * renombra de forma atómica, así que una instantánea a medio escribir nunca
+ * reemplaza a la anterior.
+ */
+final class InstantaneaCitas {
+    
+    private static final int MAGIA = 0x43495441; // "CITA"
+    private static final int VERSION = 1;
+    private static final int CABECERA = 24;
+    private static final int TAMANO_BUFFER = 1 << 20;
+    private static final Cita.EstadoCita[] ESTADOS = Cita.EstadoCita.values();
+    
+    private final long posicionDiario;
+    private final List<Cita> citas;
+    
+    private InstantaneaCitas(long posicionDiario, List<Cita> citas) {
+        this.posicionDiario = posicionDiario;
+        this.citas = citas;
+    }
+    
+    /**
+     * Posición del diario hasta la que llega la instantánea
+     */
+    long posicionDiario() {
+        return posicionDiario;
+    }
+    
+    List<Cita> citas() {
+        return citas;
+    }
+    
+    /**
+     * Escribe la instantánea de forma atómica
+     */
+    static void escribir(Path archivo, long posicionDiario, Collection<Cita> citas) throws IOException {
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANO_BUFFER);
+            canal.position(CABECERA);
+            int cantidad = 0;
+            
+            for (Cita cita : citas) {
+                ByteBuffer registro = codificar(cita);
+                crc.update(registro.duplicate());
+                if (registro.remaining() > buffer.remaining()) {
+                    vaciar(canal, buffer);
+                }
+                if (registro.remaining() > buffer.capacity()) {
+                    escribirCompleto(canal, registro);
+                } else {
+                    buffer.put(registro);
+                }
+                cantidad++;
+            }
+            vaciar(canal, buffer);
+            
+            ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+            cabecera.putInt(MAGIA)
+                    .putInt(VERSION)
+                    .putLong(posicionDiario)
+                    .putInt(cantidad)
+                    .putInt((int) crc.getValue())
+                    .flip();
+            while (cabecera.hasRemaining()) {
+                canal.write(cabecera, cabecera.position());
+            }
+            canal.force(true);
+        }
+        
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Lee una instantánea mapeando el archivo en memoria
+     *
+     * @return La instantánea, o null si no existe o está dañada
+     */
+    static InstantaneaCitas leer(Path archivo) throws IOException {
+        if (!Files.exists(archivo)) {
+            return null;
+        }
+        
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            if (tamano < CABECERA || tamano > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+            if (mapa.getInt() != MAGIA || mapa.getInt() != VERSION) {
+                return null;
+            }
+            long posicionDiario = mapa.getLong();
+            int cantidad = mapa.getInt();
+            int crcEsperado = mapa.getInt();
+            
+            CRC32 crc = new CRC32();
+            crc.update(mapa.slice());
+            if ((int) crc.getValue() != crcEsperado) {
+                return null;
+            }
+            
+            List<Cita> citas = new ArrayList<>(cantidad);
+            byte[] auxiliar = new byte[256];
+            for (int i = 0; i < cantidad; i++) {
+                Cita cita = new Cita();
+                cita.setCodigo(leerTexto(mapa, auxiliar));
+                cita.setServicio(leerTexto(mapa, auxiliar));
+                cita.setPersonal(leerTexto(mapa, auxiliar));
+                long dia = mapa.getLong();
+                cita.setFecha(dia != Long.MIN_VALUE ? LocalDate.ofEpochDay(dia) : null);
+                long nanos = mapa.getLong();
+                cita.setHora(nanos >= 0 ? LocalTime.ofNanoOfDay(nanos) : null);
+                cita.setMotivo(leerTexto(mapa, auxiliar));
+                cita.setEstado(ESTADOS[mapa.get()]);
+                long creacion = mapa.getLong();
+                if (creacion != Long.MIN_VALUE) {
+                    cita.setFechaCreacion(LocalDateTime.ofInstant(Instant.ofEpochMilli(creacion), ZoneOffset.UTC));
+                }
+                citas.add(cita);
+            }
+            return new InstantaneaCitas(posicionDiario, citas);
+        }
+    }
+    
+    private static ByteBuffer codificar(Cita cita) {
+        byte[] codigo = bytes(cita.getCodigo());
+        byte[] servicio = bytes(cita.getServicio());
+        byte[] personal = bytes(cita.getPersonal());
+        byte[] motivo = bytes(cita.getMotivo());
+        int tamano = 4 * 4 + largo(codigo) + largo(servicio) + largo(personal) + largo(motivo) + 8 + 8 + 1 + 8;
+        
+        ByteBuffer registro = ByteBuffer.allocate(tamano);
+        escribirTexto(registro, codigo);
+        escribirTexto(registro, servicio);
+        escribirTexto(registro, personal);
+        registro.putLong(cita.getFecha() != null ? cita.getFecha().toEpochDay() : Long.MIN_VALUE);
+        registro.putLong(cita.getHora() != null ? cita.getHora().toNanoOfDay() : -1L);
+        escribirTexto(registro, motivo);
+        registro.put((byte) cita.getEstado().ordinal());
+        registro.putLong(cita.getFechaCreacion() != null
+                ? cita.getFechaCreacion().toInstant(ZoneOffset.UTC).toEpochMilli()
+                : Long.MIN_VALUE);
+        return registro.flip();
+    }
+    
+    private static byte[] bytes(String texto) {
+        return texto != null ? texto.getBytes(StandardCharsets.UTF_8) : null;
+    }
+    
+    private static int largo(byte[] texto) {
+        return texto != null ? texto.length : 0;
+    }
+    
+    private static void escribirTexto(ByteBuffer registro, byte[] texto) {
+        if (texto == null) {
+            registro.putInt(-1);
+        } else {
+            registro.putInt(texto.length).put(texto);
+        }
+    }
+    
+    private static String leerTexto(ByteBuffer mapa, byte[] auxiliar) {
+        int largo = mapa.getInt();
+        if (largo < 0) {
+            return null;
+        }
+        byte[] destino = largo <= auxiliar.length ? auxiliar : new byte[largo];
+        mapa.get(destino, 0, largo);
+        return new String(destino, 0, largo, StandardCharsets.UTF_8);
+    }
+    
+    private static void vaciar(FileChannel canal, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        escribirCompleto(canal, buffer);
+        buffer.clear();
+    }
+    
+    private static void escribirCompleto(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+    }
+}
@@ -2,13 +2,23 @@ package modelo;
 
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexModel;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistry;
-import org.bson.codecs.pojo.PojoCodecProvider;
 
-import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
 import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 
 /**
@@ -36,14 +46,10 @@ public class MongoDBConfig {
             System.out.println("🔌 INICIANDO CONEXIÓN A MONGODB");
             System.out.println("=".repeat(60));
             
-            // Configurar el codec para trabajar con POJOs (Plain Old Java Objects)
-            CodecRegistry pojoCodecRegistry = fromProviders(
-                PojoCodecProvider.builder().automatic(true).build()
-            );
-            
+            // Registrar el codec de Cita (fechas y horas nativas, sin DTO)
             CodecRegistry codecRegistry = fromRegistries(
-                MongoClientSettings.getDefaultCodecRegistry(),
-                pojoCodecRegistry
+                fromCodecs(new CodecCita()),
+                MongoClientSettings.getDefaultCodecRegistry()
             );
             
             // Configurar settings de MongoDB
@@ -117,6 +123,78 @@ public class MongoDBConfig {
         return mongoClient;
     }
     
+    /**
+     * Crea los índices que falten en una colección y verifica que existan
+     * Cada índice se crea por separado: si uno falla (por ejemplo, un índice
+     * único sobre datos con valores repetidos) los demás se crean igual.
+     * Crear un índice que ya existe no hace nada.
+     * 
+     * @return true si al terminar existen todos los índices (con las opciones unique y
+     *         partialFilterExpression si se pidieron)
+     */
+    public boolean asegurarIndices(MongoCollection<?> coleccion, List<IndexModel> indices) {
+        String nombre = coleccion.getNamespace().getCollectionName();
+        for (IndexModel indice : indices) {
+            try {
+                coleccion.createIndex(indice.getKeys(), indice.getOptions());
+            } catch (MongoException e) {
+                System.err.println("⚠️ No se pudo crear el índice " + claves(indice) + " en '" + nombre + "': " + e.getMessage());
+            }
+        }
+        
+        List<Document> existentes;
+        try {
+            existentes = coleccion.listIndexes().into(new ArrayList<>());
+        } catch (MongoException e) {
+            System.err.println("❌ No se pudieron listar los índices de '" + nombre + "': " + e.getMessage());
+            return false;
+        }
+        
+        boolean completos = true;
+        for (IndexModel indice : indices) {
+            BsonDocument esperadas = claves(indice);
+            boolean unico = Boolean.TRUE.equals(indice.getOptions().isUnique());
+            boolean parcial = indice.getOptions().getPartialFilterExpression() != null;
+            boolean existe = existentes.stream().anyMatch(existente ->
+                mismasClaves(esperadas, existente.get("key", Document.class))
+                    && (!unico || existente.getBoolean("unique", false))
+                    && (!parcial || existente.containsKey("partialFilterExpression")));
+            if (!existe) {
+                System.err.println("⚠️ Falta el índice " + esperadas.toJson() + " en '" + nombre + "'");
+                completos = false;
+            }
+        }
+        
+        if (completos) {
+            System.out.println("🗂️ Índices verificados en '" + nombre + "': " + indices.size());
+        }
+        return completos;
+    }
+    
+    private BsonDocument claves(IndexModel indice) {
+        return indice.getKeys().toBsonDocument(BsonDocument.class, database.getCodecRegistry());
+    }
+    
+    /**
+     * Compara las claves de un índice (campos en orden y dirección)
+     */
+    private static boolean mismasClaves(BsonDocument esperadas, Document existentes) {
+        if (existentes == null || existentes.size() != esperadas.size()) {
+            return false;
+        }
+        Iterator<Map.Entry<String, Object>> campos = existentes.entrySet().iterator();
+        for (Map.Entry<String, BsonValue> esperada : esperadas.entrySet()) {
+            Map.Entry<String, Object> campo = campos.next();
+            if (!esperada.getKey().equals(campo.getKey())
+                    || !(campo.getValue() instanceof Number)
+                    || !esperada.getValue().isNumber()
+                    || ((Number) campo.getValue()).intValue() != esperada.getValue().asNumber().intValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * Cierra la conexión a MongoDB
      */
@@ -159,7 +237,7 @@ public class MongoDBConfig {
         
         if (conectado && database != null) {
             try {
-                long count = database.getCollection("citas", CitaDTO.class).countDocuments();
+                long count = database.getCollection("citas").countDocuments();
                 System.out.println("Documentos en colección 'citas': " + count);
             } catch (Exception e) {
                 System.err.println("Error al contar documentos: " + e.getMessage());
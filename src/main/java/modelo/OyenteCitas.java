@@ -0,0 +1,15 @@
+package modelo;
+
+/**
+ * Recibe los cambios de las citas de un repositorio (creadas, canceladas y
+ * cambios de estado) para que las pantallas actualicen solo las filas afectadas
+ * 
+ * Se llama en el hilo que hizo el cambio, después de guardarlo: debe ser
+ * rápido y no bloquear (una vista Swing debe pasar el trabajo a
+ * SwingUtilities.invokeLater).
+ */
+@FunctionalInterface
+public interface OyenteCitas {
+    
+    void citaCambiada(EventoCita evento);
+}
@@ -0,0 +1,137 @@
+package modelo;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Página de citas de una consulta paginada por clave (keyset)
+ *
+ * Las citas se recorren en orden (fecha, hora, código). La continuación es
+ * un texto opaco que codifica la última cita devuelta: la página siguiente
+ * empieza justo después de ella, sin contar ni saltar las anteriores, así
+ * que recorrer un historial grande usa memoria constante y no se desordena
+ * si entretanto se agregan citas.
+ *
+ * Una cita sin fecha u hora va antes que las demás de su grupo (igual que
+ * ordena MongoDB un campo que falta); en la continuación el valor queda vacío.
+ */
+public class PaginaCitas {
+    
+    static final Comparator<LocalDate> ORDEN_FECHA = Comparator.nullsFirst(Comparator.naturalOrder());
+    static final Comparator<LocalTime> ORDEN_HORA = Comparator.nullsFirst(Comparator.naturalOrder());
+    
+    /**
+     * Orden de la paginación: fecha, hora y código (sin fecha u hora, primero)
+     */
+    static final Comparator<Cita> ORDEN = Comparator.comparing(Cita::getFecha, ORDEN_FECHA)
+                                                    .thenComparing(Cita::getHora, ORDEN_HORA)
+                                                    .thenComparing(Cita::getCodigo);
+    
+    private final List<Cita> citas;
+    private final String continuacion;
+    
+    public PaginaCitas(List<Cita> citas, String continuacion) {
+        this.citas = Collections.unmodifiableList(citas);
+        this.continuacion = continuacion;
+    }
+    
+    /**
+     * Crea la página a partir de hasta tamano + 1 citas leídas en orden
+     * (la cita extra solo indica que hay más)
+     */
+    static PaginaCitas desde(List<Cita> leidas, int tamano) {
+        if (leidas.size() <= tamano) {
+            return new PaginaCitas(leidas, null);
+        }
+        List<Cita> pagina = leidas.subList(0, tamano);
+        return new PaginaCitas(pagina, continuacionDe(pagina.get(tamano - 1)));
+    }
+    
+    public List<Cita> getCitas() {
+        return citas;
+    }
+    
+    /**
+     * Continuación para pedir la página siguiente, o null si es la última
+     */
+    public String getContinuacion() {
+        return continuacion;
+    }
+    
+    public boolean hayMas() {
+        return continuacion != null;
+    }
+    
+    /**
+     * Valida el tamaño de página
+     */
+    static void validarTamano(int tamano) {
+        if (tamano <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo: " + tamano);
+        }
+    }
+    
+    static String continuacionDe(Cita cita) {
+        String clave = texto(cita.getFecha()) + "|" + texto(cita.getHora()) + "|" + cita.getCodigo();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(clave.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String texto(Object valor) {
+        return valor == null ? "" : valor.toString();
+    }
+    
+    /**
+     * Posición (fecha, hora, código) de la última cita de la página anterior
+     * (fecha u hora null si esa cita no las tenía)
+     */
+    static final class Posicion {
+        final LocalDate fecha;
+        final LocalTime hora;
+        final String codigo;
+        
+        private Posicion(LocalDate fecha, LocalTime hora, String codigo) {
+            this.fecha = fecha;
+            this.hora = hora;
+            this.codigo = codigo;
+        }
+        
+        /**
+         * Decodifica una continuación
+         *
+         * @return La posición, o null si la continuación es null (primera página)
+         */
+        static Posicion de(String continuacion) {
+            if (continuacion == null) {
+                return null;
+            }
+            try {
+                String clave = new String(Base64.getUrlDecoder().decode(continuacion), StandardCharsets.UTF_8);
+                String[] partes = clave.split("\\|", 3);
+                return new Posicion(partes[0].isEmpty() ? null : LocalDate.parse(partes[0]),
+                                    partes[1].isEmpty() ? null : LocalTime.parse(partes[1]),
+                                    partes[2]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Continuación inválida: " + continuacion, e);
+            }
+        }
+        
+        /**
+         * Verifica si la cita va después de esta posición en el orden (fecha, hora, código)
+         */
+        boolean esAnteriorA(Cita cita) {
+            int comparacion = ORDEN_FECHA.compare(cita.getFecha(), fecha);
+            if (comparacion == 0) {
+                comparacion = ORDEN_HORA.compare(cita.getHora(), hora);
+            }
+            if (comparacion == 0) {
+                comparacion = cita.getCodigo().compareTo(codigo);
+            }
+            return comparacion > 0;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package modelo;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Lista de oyentes de un repositorio
+ * Registrar y quitar oyentes es poco frecuente, así que publicar recorre una
+ * copia inmutable sin bloqueos. Un oyente que falla no impide avisar a los demás.
+ */
+final class PublicadorEventos {
+    
+    private final List<OyenteCitas> oyentes = new CopyOnWriteArrayList<>();
+    
+    void agregar(OyenteCitas oyente) {
+        if (oyente != null) {
+            oyentes.add(oyente);
+        }
+    }
+    
+    void quitar(OyenteCitas oyente) {
+        oyentes.remove(oyente);
+    }
+    
+    boolean hayOyentes() {
+        return !oyentes.isEmpty();
+    }
+    
+    void publicar(EventoCita evento) {
+        for (OyenteCitas oyente : oyentes) {
+            try {
+                oyente.citaCambiada(evento);
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Error en un oyente de citas (" + evento + "): " + e.getMessage());
+            }
+        }
+    }
+}
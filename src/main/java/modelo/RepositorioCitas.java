@@ -1,24 +1,128 @@
 package modelo;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Repositorio simulado para gestionar citas en memoria
  * En un proyecto real, esto se conectaría a una base de datos
+ *
+ * Concurrencia: la reserva de un horario es atómica por clave (personal, fecha)
+ * del índice de horarios, así que las reservas de distinto personal avanzan en
+ * paralelo y un mismo horario nunca se asigna dos veces.
+ *
+ * Persistencia opcional: conDiario() crea un repositorio que anexa cada cambio
+ * a un diario local y lo reproduce al iniciar (ver DiarioCitas). Cada cierto
+ * número de registros se escribe una instantánea (ver InstantaneaCitas) para
+ * que el arranque cargue el estado de una vez y reproduzca solo la cola.
  */
-public class RepositorioCitas {
+public class RepositorioCitas implements IRepositorioCitas {
     
-    private static RepositorioCitas instancia;
-    private List<Cita> citas;
+    private static volatile RepositorioCitas instancia;
+    
+    // Citas en memoria y segmentos compactos, leídos por versiones inmutables
+    private final SecuenciaCitas citas;
+    
+    // Índice primario: código -> cita
+    private final Map<String, Cita> citasPorCodigo;
+    
+    // Índice de horarios ocupados: (personal, fecha) -> agenda del día (citas PENDIENTES y mapa de bits)
+    private final ConcurrentHashMap<ClaveAgenda, AgendaDia> agenda;
+    
+    // Índice temporal ordenado por (fecha, hora, código) para consultas por rango
+    private final ConcurrentSkipListMap<ClaveTemporal, Cita> citasPorFechaHora;
+    
+    // Índice secundario: servicio -> citas del servicio en orden (fecha, hora, código)
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<ClaveTemporal, Cita>> citasPorServicio;
+    
+    // Citas PENDIENTES ordenadas por fecha y hora, y por tanto por su límite de cancelación
+    private final ConcurrentSkipListMap<ClaveTemporal, Cita> pendientesPorLimite;
+    
+    // Contadores por estado, actualizados en cada transición
+    private final Map<Cita.EstadoCita, LongAdder> contadores;
+    
+    // Valores repetidos (servicio, personal) compartidos por todas las citas
+    private final DiccionarioValores dimensiones;
+    
+    // Orden de las consultas por rango y de la paginación
+    private static final Comparator<Cita> ORDEN_TEMPORAL = PaginaCitas.ORDEN;
+    
+    // Oyentes de altas y cambios de estado (pantallas, cachés)
+    private final PublicadorEventos eventos = new PublicadorEventos();
+    
+    // Mantiene los índices al día cuando una cita cambia de estado
+    private final Cita.ObservadorEstado observador = this::alCambiarEstado;
+    
+    // Resultados negativos de agregar (la cita no se guardó)
+    private static final long RECHAZO_INVALIDA = -1;
+    private static final long RECHAZO_CODIGO = -2;
+    private static final long RECHAZO_HORARIO = -3;
+    
+    // Registros del diario entre instantáneas automáticas
+    private static final long REGISTROS_POR_INSTANTANEA = 100_000;
+    
+    // Diario de persistencia (null en el modo solo memoria)
+    private volatile DiarioCitas diario;
+    private Path archivoInstantanea;
+    
+    // Instantánea anterior, que se conserva por si la última está dañada; el
+    // diario se compacta hasta su posición (la de la última aún no se descarta)
+    private Path archivoInstantaneaAnterior;
+    private long posicionInstantanea;
+    
+    // Altas y limpiezas toman el bloqueo compartido; la instantánea, el exclusivo,
+    // para capturar un estado que corresponda exactamente a una posición del diario
+    private final ReadWriteLock bloqueoInstantanea = new ReentrantReadWriteLock();
+    private final Object escrituraInstantanea = new Object();
+    private final AtomicBoolean instantaneaEnCurso = new AtomicBoolean();
+    
+    private volatile long registrosEnInstantanea;
     
     // Singleton pattern
     private RepositorioCitas() {
-        this.citas = new ArrayList<>();
-        inicializarDatosPrueba();
+        this(true);
+    }
+    
+    private RepositorioCitas(boolean datosPrueba) {
+        this.citas = new SecuenciaCitas(observador);
+        this.citasPorCodigo = new ConcurrentHashMap<>();
+        this.agenda = new ConcurrentHashMap<>();
+        this.citasPorFechaHora = new ConcurrentSkipListMap<>();
+        this.citasPorServicio = new ConcurrentHashMap<>();
+        this.pendientesPorLimite = new ConcurrentSkipListMap<>();
+        this.dimensiones = new DiccionarioValores();
+        this.contadores = new EnumMap<>(Cita.EstadoCita.class);
+        for (Cita.EstadoCita estado : Cita.EstadoCita.values()) {
+            contadores.put(estado, new LongAdder());
+        }
+        if (datosPrueba) {
+            inicializarDatosPrueba();
+        }
     }
     
     /**
@@ -26,11 +130,108 @@ public class RepositorioCitas {
      */
     public static RepositorioCitas obtenerInstancia() {
         if (instancia == null) {
-            instancia = new RepositorioCitas();
+            synchronized (RepositorioCitas.class) {
+                if (instancia == null) {
+                    instancia = new RepositorioCitas();
+                }
+            }
         }
         return instancia;
     }
     
+    /**
+     * Crea un repositorio persistente respaldado por un diario en disco
+     * Carga la última instantánea (archivo + ".instantanea", o la anterior si
+     * está dañada), reproduce la cola del diario y desde entonces anexa cada
+     * alta, cambio de estado y limpieza antes de confirmar la operación.
+     * No incluye datos de prueba ni es la instancia única.
+     *
+     * @param archivo Ruta del diario; se crea si no existe
+     */
+    public static RepositorioCitas conDiario(Path archivo) throws IOException {
+        RepositorioCitas repositorio = new RepositorioCitas(false);
+        repositorio.archivoInstantanea = archivo.resolveSibling(archivo.getFileName() + ".instantanea");
+        repositorio.archivoInstantaneaAnterior = archivo.resolveSibling(archivo.getFileName() + ".instantanea.anterior");
+        
+        long desde = 0;
+        InstantaneaCitas instantanea = InstantaneaCitas.leer(repositorio.archivoInstantanea);
+        if (instantanea == null) {
+            instantanea = InstantaneaCitas.leer(repositorio.archivoInstantaneaAnterior);
+            if (instantanea != null) {
+                // La dañada no debe pasar a ser la anterior en la próxima instantánea
+                Files.deleteIfExists(repositorio.archivoInstantanea);
+            }
+        }
+        if (instantanea != null) {
+            repositorio.restaurar(instantanea.citas());
+            desde = instantanea.posicionDiario();
+        }
+        repositorio.posicionInstantanea = desde;
+        
+        // Reproducir sin diario para no volver a anexar lo que ya está en disco
+        repositorio.diario = DiarioCitas.abrir(archivo, repositorio, desde);
+        return repositorio;
+    }
+    
+    /**
+     * Escribe una instantánea del estado actual y de la posición del diario
+     * que refleja. Las escrituras solo se detienen mientras se captura la
+     * lista de citas, no mientras se escribe el archivo.
+     * La instantánea previa pasa a ser la anterior y el diario se compacta
+     * hasta la posición de esta, así que en disco quedan como mucho dos
+     * instantáneas y los registros desde la más vieja de ellas.
+     */
+    public void guardarInstantanea() throws IOException {
+        DiarioCitas actual = diario;
+        if (actual == null) {
+            throw new IllegalStateException("El repositorio no tiene diario");
+        }
+        
+        synchronized (escrituraInstantanea) {
+            long posicion;
+            long registros;
+            List<Cita> todas;
+            bloqueoInstantanea.writeLock().lock();
+            try {
+                registros = actual.registrosAnexados();
+                posicion = actual.sincronizar();
+                todas = obtenerTodas();
+            } finally {
+                bloqueoInstantanea.writeLock().unlock();
+            }
+            
+            // Los cambios de estado posteriores a la posición pueden quedar también
+            // en la instantánea; reproducirlos de nuevo no altera el resultado
+            long anterior = posicionInstantanea;
+            if (Files.exists(archivoInstantanea)) {
+                Files.move(archivoInstantanea, archivoInstantaneaAnterior,
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            InstantaneaCitas.escribir(archivoInstantanea, posicion, todas);
+            registrosEnInstantanea = registros;
+            posicionInstantanea = posicion;
+            
+            // La nueva ya es durable: lo anterior a la instantánea previa sobra
+            actual.compactar(anterior);
+        }
+    }
+    
+    /**
+     * Cierra el diario de persistencia (sin efecto en el modo solo memoria)
+     * Si hay registros posteriores a la última instantánea, escribe una nueva
+     * para que el próximo arranque no tenga que reproducirlos.
+     */
+    public void cerrar() throws IOException {
+        DiarioCitas actual = diario;
+        if (actual != null) {
+            if (actual.registrosAnexados() > registrosEnInstantanea) {
+                guardarInstantanea();
+            }
+            diario = null;
+            actual.close();
+        }
+    }
+    
     /**
      * Inicializa datos de prueba para simular citas existentes
      */
@@ -51,82 +252,403 @@ public class RepositorioCitas {
         cita3.setCodigo("CITA-I9J0K1L2");
         
         // Agregar citas de prueba
-        citas.add(cita1);
-        citas.add(cita2);
-        citas.add(cita3);
+        guardar(cita1);
+        guardar(cita2);
+        guardar(cita3);
     }
     
     /**
      * Guarda una nueva cita
+     * Con diario, si el alta no llega a disco la cita se quita de memoria
+     * (libera su código y su horario) y se devuelve false
      */
     public boolean guardar(Cita cita) {
-        if (cita == null) {
+        long turno;
+        bloqueoInstantanea.readLock().lock();
+        try {
+            turno = agregar(cita);
+        } finally {
+            bloqueoInstantanea.readLock().unlock();
+        }
+        if (turno < 0) {
             return false;
         }
-        
-        // Validar que no exista solapamiento antes de guardar
-        if (!ValidadorCitas.validarNoSolapamiento(
-                cita.getPersonal(), 
-                cita.getFecha(), 
-                cita.getHora(), 
-                this.citas)) {
+        if (!confirmarEnDiario(turno)) {
+            deshacerAltas(List.of(cita));
             return false;
         }
+        if (eventos.hayOyentes()) {
+            eventos.publicar(EventoCita.creada(cita));
+        }
+        return true;
+    }
+    
+    /**
+     * Guarda un lote de citas
+     * El lote se valida en una sola pasada (consigo mismo y contra el índice
+     * de horarios) y, con diario, se espera una sola vez a que las altas
+     * aceptadas estén en disco; si no llegan, se quitan de memoria y quedan
+     * como ERROR_ESCRITURA
+     */
+    public ResultadoLote guardarLote(List<Cita> lote) {
+        ResultadoLote.Motivo[] motivos = ResultadoLote.prevalidar(lote);
+        long ultimoTurno = 0;
+        bloqueoInstantanea.readLock().lock();
+        try {
+            for (int i = 0; i < motivos.length; i++) {
+                if (motivos[i] != null) {
+                    continue;
+                }
+                long turno = agregar(lote.get(i));
+                if (turno >= 0) {
+                    motivos[i] = ResultadoLote.Motivo.ACEPTADA;
+                    ultimoTurno = Math.max(ultimoTurno, turno);
+                } else if (turno == RECHAZO_CODIGO) {
+                    motivos[i] = ResultadoLote.Motivo.CODIGO_REPETIDO;
+                } else if (turno == RECHAZO_HORARIO) {
+                    motivos[i] = ResultadoLote.Motivo.HORARIO_OCUPADO;
+                } else {
+                    motivos[i] = ResultadoLote.Motivo.CITA_INVALIDA;
+                }
+            }
+        } finally {
+            bloqueoInstantanea.readLock().unlock();
+        }
         
-        return citas.add(cita);
+        // Los registros del diario se confirman en orden: esperar el último basta
+        if (!confirmarEnDiario(ultimoTurno)) {
+            List<Cita> altas = new ArrayList<>();
+            for (int i = 0; i < motivos.length; i++) {
+                if (motivos[i] == ResultadoLote.Motivo.ACEPTADA) {
+                    motivos[i] = ResultadoLote.Motivo.ERROR_ESCRITURA;
+                    altas.add(lote.get(i));
+                }
+            }
+            deshacerAltas(altas);
+        } else if (eventos.hayOyentes()) {
+            for (int i = 0; i < motivos.length; i++) {
+                if (motivos[i] == ResultadoLote.Motivo.ACEPTADA) {
+                    eventos.publicar(EventoCita.creada(lote.get(i)));
+                }
+            }
+        }
+        return new ResultadoLote(lote, motivos);
+    }
+    
+    /**
+     * Valida e indexa la cita
+     *
+     * @return Un valor negativo (RECHAZO_*) si se rechaza; si no, el turno del
+     *         diario a confirmar (0 sin diario)
+     */
+    private long agregar(Cita cita) {
+        if (cita == null || cita.getCodigo() == null) {
+            return RECHAZO_INVALIDA;
+        }
+        
+        // Reservar el código: un código repetido dejaría el índice primario
+        // inconsistente con la lista
+        if (citasPorCodigo.putIfAbsent(cita.getCodigo(), cita) != null) {
+            return RECHAZO_CODIGO;
+        }
+        if (existeEnSegmentos(cita.getCodigo())) {
+            citasPorCodigo.remove(cita.getCodigo(), cita);
+            return RECHAZO_CODIGO;
+        }
+        
+        // Validar que no exista solapamiento (reserva atómica en el índice)
+        boolean horarioValido = cita.getEstado() == Cita.EstadoCita.PENDIENTE
+                ? ocuparHorario(cita)
+                : !estaOcupado(cita.getPersonal(), cita.getFecha(), cita.getHora());
+        
+        if (!horarioValido) {
+            citasPorCodigo.remove(cita.getCodigo(), cita);
+            return RECHAZO_HORARIO;
+        }
+        
+        // Compartir las cadenas de servicio y personal entre todas las citas
+        cita.setServicio(dimensiones.canonico(cita.getServicio()));
+        cita.setPersonal(dimensiones.canonico(cita.getPersonal()));
+        
+        // Registrar el observador e indexar la cita sin que cambie de estado entretanto
+        // (el alta entra al diario antes que cualquier cambio de estado de la cita)
+        long turno;
+        synchronized (cita) {
+            turno = diario != null ? diario.registrarAlta(cita) : 0;
+            cita.setObservador(observador);
+            contadores.get(cita.getEstado()).increment();
+            if (cita.getEstado() == Cita.EstadoCita.PENDIENTE) {
+                agregarPendiente(cita);
+            }
+        }
+        
+        // Si la cita dejó de estar pendiente mientras se reservaba, liberar el horario
+        if (cita.getEstado() != Cita.EstadoCita.PENDIENTE) {
+            liberarHorario(cita);
+        }
+        
+        if (cita.getFecha() != null) {
+            citasPorFechaHora.put(ClaveTemporal.de(cita), cita);
+            if (cita.getServicio() != null) {
+                citasPorServicio.computeIfAbsent(cita.getServicio(), s -> new ConcurrentSkipListMap<>())
+                                .put(ClaveTemporal.de(cita), cita);
+            }
+        }
+        
+        citas.agregar(cita);
+        return turno;
+    }
+    
+    /**
+     * Deshace lo que hizo agregar con citas cuyo alta no llegó al diario:
+     * salen de la lista, de los índices y de los contadores, y liberan su
+     * código y su horario para que un reintento no se rechace como repetido
+     */
+    private void deshacerAltas(List<Cita> altas) {
+        if (altas.isEmpty()) {
+            return;
+        }
+        Map<Cita, Boolean> quitadas = new IdentityHashMap<>();
+        synchronized (citas) {
+            for (Cita cita : altas) {
+                // El estado puede haber cambiado desde el alta: se descuenta el actual
+                synchronized (cita) {
+                    cita.setObservador(null);
+                    contadores.get(cita.getEstado()).decrement();
+                }
+                liberarHorario(cita);
+                quitarPendiente(cita);
+                if (cita.getFecha() != null) {
+                    citasPorFechaHora.remove(ClaveTemporal.de(cita), cita);
+                    quitarDeServicio(cita);
+                }
+                citasPorCodigo.remove(cita.getCodigo(), cita);
+                quitadas.put(cita, Boolean.TRUE);
+            }
+            citas.quitar(quitadas::containsKey);
+        }
+    }
+    
+    /**
+     * Carga las citas de una instantánea: las finalizadas van directamente a un
+     * segmento compacto y solo las pendientes pasan por los índices
+     */
+    private void restaurar(List<Cita> restauradas) {
+        List<Cita> finalizadas = new ArrayList<>();
+        for (Cita cita : restauradas) {
+            if (cita.getEstado() != Cita.EstadoCita.PENDIENTE
+                    && cita.getFecha() != null && cita.getHora() != null) {
+                finalizadas.add(cita);
+            } else {
+                agregar(cita);
+            }
+        }
+        
+        if (!finalizadas.isEmpty()) {
+            citas.agregarSegmento(SegmentoCitasCompacto.construir(finalizadas, dimensiones));
+            finalizadas.forEach(cita -> contadores.get(cita.getEstado()).increment());
+        }
     }
     
     /**
      * Busca una cita por código
      */
     public Cita buscarPorCodigo(String codigo) {
-        return citas.stream()
-                   .filter(c -> c.getCodigo().equals(codigo))
-                   .findFirst()
-                   .orElse(null);
+        if (codigo == null) {
+            return null;
+        }
+        Cita cita = citasPorCodigo.get(codigo);
+        if (cita != null) {
+            return cita;
+        }
+        for (SegmentoCitasCompacto segmento : citas.actual().segmentos()) {
+            cita = segmento.buscarPorCodigo(codigo, observador);
+            if (cita != null) {
+                return cita;
+            }
+        }
+        return null;
     }
     
     /**
      * Obtiene todas las citas
+     * 
+     * Devuelve una vista de solo lectura de la versión vigente, sin copiar las
+     * citas: sigue siendo consistente aunque después se guarden o compacten
+     * citas, y esos cambios no aparecen en ella.
      */
     public List<Cita> obtenerTodas() {
-        return new ArrayList<>(citas);
+        return citas.actual().todas();
     }
     
     /**
      * Obtiene citas por personal
      */
     public List<Cita> obtenerPorPersonal(String personal) {
-        return citas.stream()
-                   .filter(c -> c.getPersonal().equals(personal))
-                   .collect(Collectors.toList());
+        SecuenciaCitas.Version version = citas.actual();
+        List<Cita> resultado = filtrar(version, c -> c.getPersonal().equals(personal));
+        version.segmentos().forEach(segmento -> resultado.addAll(segmento.obtenerPorPersonal(personal, observador)));
+        return resultado;
     }
     
     /**
      * Obtiene citas por fecha
      */
     public List<Cita> obtenerPorFecha(LocalDate fecha) {
-        return citas.stream()
-                   .filter(c -> c.getFecha().equals(fecha))
-                   .collect(Collectors.toList());
+        return obtenerPorRango(fecha, fecha);
+    }
+    
+    /**
+     * Obtiene las citas entre dos fechas (ambas inclusive), ordenadas por fecha y hora
+     * Recorre solo el tramo del índice temporal que corresponde al rango
+     */
+    public List<Cita> obtenerPorRango(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            return new ArrayList<>();
+        }
+        List<Cita> resultado = new ArrayList<>(citasPorFechaHora.subMap(
+                ClaveTemporal.inicioDe(desde), true,
+                ClaveTemporal.inicioDe(hasta.plusDays(1)), false).values());
+        
+        List<SegmentoCitasCompacto> segmentos = citas.actual().segmentos();
+        if (!segmentos.isEmpty()) {
+            segmentos.forEach(segmento -> resultado.addAll(segmento.obtenerPorRango(desde, hasta, observador)));
+            resultado.sort(ORDEN_TEMPORAL);
+        }
+        return resultado;
+    }
+    
+    /**
+     * Obtiene las citas de un servicio, ordenadas por fecha y hora
+     * Usa el índice por servicio; en los segmentos compara identificadores del diccionario
+     */
+    public List<Cita> obtenerPorServicio(String servicio) {
+        return obtenerPorServicioYRango(servicio, null, null);
+    }
+    
+    /**
+     * Obtiene las citas de un servicio en una fecha, ordenadas por hora
+     */
+    public List<Cita> obtenerPorServicioYFecha(String servicio, LocalDate fecha) {
+        if (fecha == null) {
+            return new ArrayList<>();
+        }
+        return obtenerPorServicioYRango(servicio, fecha, fecha);
+    }
+    
+    /**
+     * Obtiene las citas de un servicio entre dos fechas (ambas inclusive;
+     * null en ambas para no limitar), ordenadas por fecha y hora
+     */
+    public List<Cita> obtenerPorServicioYRango(String servicio, LocalDate desde, LocalDate hasta) {
+        if (servicio == null || (desde == null) != (hasta == null)
+                || (desde != null && hasta.isBefore(desde))) {
+            return new ArrayList<>();
+        }
+        
+        List<Cita> resultado = new ArrayList<>();
+        ConcurrentSkipListMap<ClaveTemporal, Cita> delServicio = citasPorServicio.get(servicio);
+        if (delServicio != null) {
+            resultado.addAll(desde == null
+                    ? delServicio.values()
+                    : delServicio.subMap(ClaveTemporal.inicioDe(desde), true,
+                                         ClaveTemporal.inicioDe(hasta.plusDays(1)), false).values());
+        }
+        
+        List<SegmentoCitasCompacto> segmentos = citas.actual().segmentos();
+        if (!segmentos.isEmpty()) {
+            segmentos.forEach(segmento -> resultado.addAll(
+                    segmento.obtenerPorServicio(servicio, desde, hasta, observador)));
+            resultado.sort(ORDEN_TEMPORAL);
+        }
+        return resultado;
+    }
+    
+    // ==================== RECORRIDOS Y PAGINACIÓN ====================
+    
+    /**
+     * Recorre todas las citas sin materializar una lista
+     * (sobre la versión vigente; ver obtenerTodas)
+     */
+    public Stream<Cita> streamTodas() {
+        return obtenerTodas().stream();
+    }
+    
+    /**
+     * Recorre las citas pendientes directamente sobre el índice de pendientes
+     */
+    public Stream<Cita> streamPendientes() {
+        return Stream.concat(pendientesPorLimite.values().stream(),
+                citas.actual().enMemoria().stream()
+                     .filter(c -> c.getFecha() == null && c.getEstado() == Cita.EstadoCita.PENDIENTE));
+    }
+    
+    /**
+     * Recorre las citas de un personal, incluidas las de los segmentos compactos
+     */
+    public Stream<Cita> streamPorPersonal(String personal) {
+        SecuenciaCitas.Version version = citas.actual();
+        return Stream.concat(
+                version.enMemoria().stream().filter(c -> Objects.equals(c.getPersonal(), personal)),
+                version.segmentos().stream().flatMap(segmento -> segmento.streamPorPersonal(personal, observador)));
+    }
+    
+    /**
+     * Obtiene una página de citas en orden (fecha, hora, código)
+     * Recorre el índice temporal a partir de la continuación en lugar de
+     * saltar las páginas anteriores. Las citas sin fecha no se paginan.
+     * 
+     * @param personal Personal a filtrar, o null para todos
+     * @param estado Estado a filtrar, o null para todos
+     * @param continuacion Continuación de la página anterior, o null para la primera
+     * @param tamano Cantidad máxima de citas de la página
+     */
+    public PaginaCitas obtenerPagina(String personal, Cita.EstadoCita estado, String continuacion, int tamano) {
+        PaginaCitas.validarTamano(tamano);
+        PaginaCitas.Posicion posicion = PaginaCitas.Posicion.de(continuacion);
+        
+        // Mezclar en orden el índice temporal y los segmentos compactos
+        PriorityQueue<Cabeza> cabezas = new PriorityQueue<>((a, b) -> ORDEN_TEMPORAL.compare(a.actual, b.actual));
+        Iterator<Cita> enMemoria = (posicion == null
+                ? citasPorFechaHora
+                : citasPorFechaHora.tailMap(ClaveTemporal.de(posicion), false)).values().iterator();
+        Cabeza.agregar(cabezas, enMemoria);
+        for (SegmentoCitasCompacto segmento : citas.actual().segmentos()) {
+            Cabeza.agregar(cabezas, segmento.iterarDespues(posicion, observador));
+        }
+        
+        List<Cita> leidas = new ArrayList<>(tamano + 1);
+        while (leidas.size() <= tamano && !cabezas.isEmpty()) {
+            Cabeza cabeza = cabezas.poll();
+            Cita cita = cabeza.actual;
+            if ((personal == null || personal.equals(cita.getPersonal()))
+                    && (estado == null || estado == cita.getEstado())) {
+                leidas.add(cita);
+            }
+            Cabeza.agregar(cabezas, cabeza.resto);
+        }
+        return PaginaCitas.desde(leidas, tamano);
     }
     
     /**
      * Obtiene citas pendientes
      */
     public List<Cita> obtenerPendientes() {
-        return citas.stream()
-                   .filter(c -> c.getEstado() == Cita.EstadoCita.PENDIENTE)
-                   .collect(Collectors.toList());
+        List<Cita> pendientes = new ArrayList<>(pendientesPorLimite.values());
+        // Las citas sin fecha no tienen lugar en el índice temporal
+        pendientes.addAll(filtrar(citas.actual(),
+                c -> c.getFecha() == null && c.getEstado() == Cita.EstadoCita.PENDIENTE));
+        return pendientes;
     }
     
     /**
      * Obtiene citas cancelables (pendientes con más de 2 horas de anticipación)
+     * Es la cola del índice de pendientes a partir del límite actual:
+     * una sola lectura del reloj y sin evaluar cada cita
      */
     public List<Cita> obtenerCancelables() {
-        return citas.stream()
-                   .filter(Cita::puedeCancelar)
-                   .collect(Collectors.toList());
+        LocalDateTime limite = LocalDateTime.now().plusHours(2);
+        return new ArrayList<>(pendientesPorLimite.tailMap(ClaveTemporal.despuesDe(limite), true).values());
     }
     
     /**
@@ -145,49 +667,502 @@ public class RepositorioCitas {
      * Verifica si un horario está ocupado
      */
     public boolean estaOcupado(String personal, LocalDate fecha, LocalTime hora) {
-        return citas.stream()
-                   .anyMatch(c -> 
-                       c.getEstado() == Cita.EstadoCita.PENDIENTE &&
-                       c.getPersonal().equals(personal) &&
-                       c.getFecha().equals(fecha) &&
-                       c.getHora().equals(hora)
-                   );
+        if (hora == null) {
+            return false;
+        }
+        AgendaDia agendaDia = agenda.get(new ClaveAgenda(personal, fecha));
+        return agendaDia != null && agendaDia.estaOcupado(hora);
     }
     
     /**
      * Obtiene horarios ocupados para un personal en una fecha
      */
     public List<LocalTime> obtenerHorariosOcupados(String personal, LocalDate fecha) {
-        return citas.stream()
-                   .filter(c -> 
-                       c.getEstado() == Cita.EstadoCita.PENDIENTE &&
-                       c.getPersonal().equals(personal) &&
-                       c.getFecha().equals(fecha)
-                   )
-                   .map(Cita::getHora)
-                   .collect(Collectors.toList());
+        AgendaDia agendaDia = agenda.get(new ClaveAgenda(personal, fecha));
+        if (agendaDia == null) {
+            return new ArrayList<>();
+        }
+        return agendaDia.obtenerHorasOcupadas();
+    }
+    
+    /**
+     * Obtiene la disponibilidad del personal en una fecha como mapa de bits
+     * de bloques de 15 minutos (HU-01 / HU-02)
+     */
+    public DisponibilidadDia obtenerDisponibilidad(String personal, LocalDate fecha) {
+        AgendaDia agendaDia = agenda.get(new ClaveAgenda(personal, fecha));
+        if (agendaDia == null) {
+            return DisponibilidadDia.libre();
+        }
+        return agendaDia.obtenerDisponibilidad();
     }
     
     /**
      * Cuenta citas por estado
      */
     public long contarPorEstado(Cita.EstadoCita estado) {
-        return citas.stream()
-                   .filter(c -> c.getEstado() == estado)
-                   .count();
+        return contadores.get(estado).sum();
+    }
+    
+    /**
+     * Obtiene el conteo de citas de todos los estados en una sola lectura
+     */
+    public Map<Cita.EstadoCita, Long> obtenerConteoPorEstado() {
+        Map<Cita.EstadoCita, Long> conteo = new EnumMap<>(Cita.EstadoCita.class);
+        contadores.forEach((estado, contador) -> conteo.put(estado, contador.sum()));
+        return conteo;
+    }
+    
+    /**
+     * Obtiene el conteo por estado de las citas que cumplen los filtros
+     * (null = sin filtro). Parte del índice más selectivo disponible (servicio,
+     * rango de fechas o personal) y cuenta en una sola pasada
+     */
+    public Map<Cita.EstadoCita, Long> obtenerConteoPorEstado(String personal, String servicio,
+                                                             LocalDate desde, LocalDate hasta) {
+        if (personal == null && servicio == null && desde == null && hasta == null) {
+            return obtenerConteoPorEstado();
+        }
+        
+        List<Cita> candidatas;
+        if (servicio != null) {
+            candidatas = obtenerPorServicio(servicio);
+        } else if (desde != null && hasta != null) {
+            candidatas = obtenerPorRango(desde, hasta);
+        } else if (personal != null) {
+            candidatas = obtenerPorPersonal(personal);
+        } else {
+            candidatas = obtenerTodas();
+        }
+        
+        Map<Cita.EstadoCita, Long> conteo = new EnumMap<>(Cita.EstadoCita.class);
+        for (Cita.EstadoCita estado : Cita.EstadoCita.values()) {
+            conteo.put(estado, 0L);
+        }
+        for (Cita cita : candidatas) {
+            // Una cita sin fecha no está en ningún rango (igual que en MongoDB)
+            if ((personal == null || personal.equals(cita.getPersonal()))
+                    && (servicio == null || servicio.equals(cita.getServicio()))
+                    && (desde == null && hasta == null || cita.getFecha() != null)
+                    && (desde == null || !cita.getFecha().isBefore(desde))
+                    && (hasta == null || !cita.getFecha().isAfter(hasta))) {
+                conteo.merge(cita.getEstado(), 1L, Long::sum);
+            }
+        }
+        return conteo;
     }
     
     /**
      * Elimina todas las citas (útil para pruebas)
+     *
+     * @return false si la limpieza no se pudo persistir (las citas quedan como estaban)
+     */
+    public boolean limpiar() {
+        bloqueoInstantanea.readLock().lock();
+        try {
+            return vaciar();
+        } finally {
+            bloqueoInstantanea.readLock().unlock();
+        }
+    }
+    
+    private boolean vaciar() {
+        synchronized (citas) {
+            // Se vacía solo después de que la limpieza esté en disco: si no llega,
+            // al reiniciar volverían las citas
+            if (!registrarEnDiario(DiarioCitas::registrarLimpieza)) {
+                return false;
+            }
+            // Las citas eliminadas ya no deben notificar a este repositorio
+            citas.actual().enMemoria().forEach(c -> c.setObservador(null));
+            citas.vaciar();
+            citasPorCodigo.clear();
+            agenda.clear();
+            citasPorFechaHora.clear();
+            citasPorServicio.clear();
+            pendientesPorLimite.clear();
+            contadores.values().forEach(LongAdder::reset);
+        }
+        return true;
+    }
+    
+    // ==================== EVENTOS ====================
+    
+    /**
+     * Registra un oyente de altas, cancelaciones y cambios de estado
      */
-    public void limpiar() {
-        citas.clear();
+    public void agregarOyente(OyenteCitas oyente) {
+        eventos.agregar(oyente);
+    }
+    
+    public void quitarOyente(OyenteCitas oyente) {
+        eventos.quitar(oyente);
     }
     
     /**
      * Obtiene la cantidad total de citas
      */
-    public int contarTotal() {
-        return citas.size();
+    public long contarTotal() {
+        return citas.actual().total();
+    }
+    
+    /**
+     * Mueve las citas finalizadas (no PENDIENTES) a un segmento compacto
+     * 
+     * En el segmento cada cita ocupa unas decenas de bytes en lugar de varios
+     * objetos; las consultas las siguen devolviendo como vistas Cita creadas
+     * bajo demanda. Las referencias previas a las citas movidas dejan de estar
+     * enlazadas al repositorio: los cambios de estado deben hacerse sobre la
+     * vista obtenida después de compactar.
+     * 
+     * @return Número de citas compactadas
+     */
+    public int compactarFinalizadas() {
+        return compactar(cita -> true);
+    }
+    
+    /**
+     * Archiva las citas finalizadas con fecha anterior a "antesDe"
+     * 
+     * Es el nivel frío del repositorio: las citas pasadas que ya no pueden
+     * cambiar salen de los índices que recorren las reservas y la
+     * disponibilidad, y se guardan en un segmento compacto. Las consultas
+     * de historial y reportes las siguen devolviendo igual que antes.
+     * Solo se archiva cuando se llama a este método. Como en
+     * compactarFinalizadas(), las referencias previas a las citas archivadas
+     * dejan de estar enlazadas al repositorio: sus cambios de estado ya no
+     * llegan a los índices ni al diario.
+     * 
+     * @return Número de citas archivadas
+     */
+    public int archivarFinalizadas(LocalDate antesDe) {
+        return compactar(cita -> cita.getFecha().isBefore(antesDe));
+    }
+    
+    /**
+     * Mueve a un segmento compacto las citas finalizadas que cumplen el criterio
+     */
+    private int compactar(Predicate<Cita> criterio) {
+        synchronized (citas) {
+            Map<Cita, Boolean> finalizadas = new IdentityHashMap<>();
+            for (Cita cita : citas.actual().enMemoria()) {
+                synchronized (cita) {
+                    if (cita.getEstado() != Cita.EstadoCita.PENDIENTE
+                            && cita.getFecha() != null && cita.getHora() != null
+                            && criterio.test(cita)) {
+                        cita.setObservador(null);
+                        finalizadas.put(cita, Boolean.TRUE);
+                    }
+                }
+            }
+            
+            if (finalizadas.isEmpty()) {
+                return 0;
+            }
+            
+            // Publicar el segmento (y quitar las citas de la secuencia en la misma versión)
+            // antes de quitarlas de los índices, para que cada código esté siempre en
+            // al menos uno de los dos lugares
+            citas.compactar(SegmentoCitasCompacto.construir(new ArrayList<>(finalizadas.keySet()), dimensiones),
+                            finalizadas::containsKey);
+            for (Cita cita : finalizadas.keySet()) {
+                citasPorCodigo.remove(cita.getCodigo(), cita);
+                citasPorFechaHora.remove(ClaveTemporal.de(cita), cita);
+                quitarDeServicio(cita);
+            }
+            return finalizadas.size();
+        }
+    }
+    
+    /**
+     * Anexa un registro al diario (si hay) y espera a que sea durable
+     *
+     * @return false si no se pudo anexar (diario cerrado) o escribir en disco
+     */
+    private boolean registrarEnDiario(ToLongFunction<DiarioCitas> registro) {
+        DiarioCitas actual = diario;
+        if (actual == null) {
+            return true;
+        }
+        long turno;
+        try {
+            turno = registro.applyAsLong(actual);
+        } catch (IllegalStateException e) {
+            System.err.println("❌ Error al persistir en el diario: " + e.getMessage());
+            return false;
+        }
+        return confirmarEnDiario(turno);
+    }
+    
+    /**
+     * Espera a que el registro del diario sea durable
+     *
+     * @return false si no se pudo escribir en disco
+     */
+    private boolean confirmarEnDiario(long turno) {
+        DiarioCitas actual = diario;
+        if (actual == null || turno == 0) {
+            return true;
+        }
+        try {
+            actual.esperar(turno);
+        } catch (UncheckedIOException e) {
+            System.err.println("❌ Error al persistir en el diario: " + e.getMessage());
+            return false;
+        }
+        
+        if (turno - registrosEnInstantanea >= REGISTROS_POR_INSTANTANEA
+                && instantaneaEnCurso.compareAndSet(false, true)) {
+            Thread hilo = new Thread(this::instantaneaPeriodica, "instantanea-citas");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+        return true;
+    }
+    
+    private void instantaneaPeriodica() {
+        try {
+            if (diario != null) {
+                guardarInstantanea();
+            }
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("❌ Error al guardar la instantánea: " + e.getMessage());
+        } finally {
+            instantaneaEnCurso.set(false);
+        }
+    }
+    
+    private boolean existeEnSegmentos(String codigo) {
+        for (SegmentoCitasCompacto segmento : citas.actual().segmentos()) {
+            if (segmento.contieneCodigo(codigo)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Filtra las citas en memoria de una versión (sin bloqueo)
+     */
+    private List<Cita> filtrar(SecuenciaCitas.Version version, Predicate<Cita> criterio) {
+        return version.enMemoria().stream()
+                      .filter(criterio)
+                      .collect(Collectors.toList());
+    }
+    
+    // ==================== ÍNDICE DE HORARIOS ====================
+    
+    /**
+     * Actualiza índices y contadores cuando una cita guardada cambia de estado
+     * El cambio se confirma en el diario antes de tocar los índices; si no llega
+     * a disco se rechaza y la cita vuelve a su estado anterior
+     *
+     * @return false si el cambio no se pudo aplicar
+     */
+    private boolean alCambiarEstado(Cita cita, Cita.EstadoCita anterior) {
+        boolean reabierta = cita.getEstado() == Cita.EstadoCita.PENDIENTE;
+        if (reabierta && !ocuparHorario(cita)) {
+            System.err.println("⚠️ El horario ya está ocupado: " + cita.getCodigo());
+            return false;
+        }
+        if (!registrarEnDiario(actual -> actual.registrarEstado(cita))) {
+            if (reabierta) {
+                liberarHorario(cita);
+            }
+            return false;
+        }
+        
+        contadores.get(anterior).decrement();
+        contadores.get(cita.getEstado()).increment();
+        if (anterior == Cita.EstadoCita.PENDIENTE) {
+            liberarHorario(cita);
+            quitarPendiente(cita);
+        } else if (reabierta) {
+            agregarPendiente(cita);
+        }
+        
+        if (eventos.hayOyentes()) {
+            eventos.publicar(EventoCita.estadoCambiado(cita, anterior));
+        }
+        return true;
+    }
+    
+    /**
+     * Quita la cita del índice por servicio (y el servicio, si queda vacío)
+     */
+    private void quitarDeServicio(Cita cita) {
+        if (cita.getServicio() == null) {
+            return;
+        }
+        citasPorServicio.computeIfPresent(cita.getServicio(), (servicio, delServicio) -> {
+            delServicio.remove(ClaveTemporal.de(cita), cita);
+            return delServicio.isEmpty() ? null : delServicio;
+        });
+    }
+    
+    /**
+     * Agrega la cita al índice de pendientes por límite de cancelación
+     */
+    private void agregarPendiente(Cita cita) {
+        if (cita.getFecha() != null) {
+            pendientesPorLimite.put(ClaveTemporal.de(cita), cita);
+        }
+    }
+    
+    /**
+     * Quita la cita del índice de pendientes
+     */
+    private void quitarPendiente(Cita cita) {
+        if (cita.getFecha() != null) {
+            pendientesPorLimite.remove(ClaveTemporal.de(cita), cita);
+        }
+    }
+    
+    /**
+     * Reserva el horario de la cita en el índice
+     * Es atómica por clave (personal, fecha): dos reservas del mismo horario
+     * nunca pueden tener éxito a la vez
+     *
+     * @return true si el horario estaba libre y quedó asignado a la cita
+     */
+    private boolean ocuparHorario(Cita cita) {
+        if (cita.getHora() == null) {
+            return true;
+        }
+        
+        boolean[] reservado = {false};
+        agenda.compute(new ClaveAgenda(cita.getPersonal(), cita.getFecha()), (clave, agendaDia) -> {
+            if (agendaDia == null) {
+                agendaDia = new AgendaDia();
+            }
+            reservado[0] = agendaDia.reservar(cita);
+            return agendaDia;
+        });
+        return reservado[0];
+    }
+    
+    /**
+     * Quita la cita del índice de horarios
+     */
+    private void liberarHorario(Cita cita) {
+        if (cita.getHora() == null) {
+            return;
+        }
+        
+        agenda.computeIfPresent(new ClaveAgenda(cita.getPersonal(), cita.getFecha()), (clave, agendaDia) -> {
+            agendaDia.liberar(cita);
+            return agendaDia.estaVacia() ? null : agendaDia;
+        });
+    }
+    
+    /**
+     * Siguiente cita de una de las fuentes ordenadas que se mezclan al paginar
+     */
+    private static final class Cabeza {
+        private final Cita actual;
+        private final Iterator<Cita> resto;
+        
+        private Cabeza(Cita actual, Iterator<Cita> resto) {
+            this.actual = actual;
+            this.resto = resto;
+        }
+        
+        static void agregar(PriorityQueue<Cabeza> cabezas, Iterator<Cita> fuente) {
+            if (fuente.hasNext()) {
+                cabezas.add(new Cabeza(fuente.next(), fuente));
+            }
+        }
+    }
+    
+    /**
+     * Clave compuesta (personal, fecha) del índice de horarios
+     */
+    private static final class ClaveAgenda {
+        private final String personal;
+        private final LocalDate fecha;
+        
+        ClaveAgenda(String personal, LocalDate fecha) {
+            this.personal = personal;
+            this.fecha = fecha;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClaveAgenda)) {
+                return false;
+            }
+            ClaveAgenda otra = (ClaveAgenda) o;
+            return Objects.equals(personal, otra.personal) && Objects.equals(fecha, otra.fecha);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(personal, fecha);
+        }
+    }
+    
+    /**
+     * Clave del índice temporal: ordena por fecha, hora y código
+     * (el código desempata citas en el mismo horario)
+     */
+    private static final class ClaveTemporal implements Comparable<ClaveTemporal> {
+        private final LocalDate fecha;
+        private final LocalTime hora;
+        private final String codigo;
+        
+        private ClaveTemporal(LocalDate fecha, LocalTime hora, String codigo) {
+            this.fecha = fecha;
+            this.hora = hora;
+            this.codigo = codigo;
+        }
+        
+        static ClaveTemporal de(Cita cita) {
+            return new ClaveTemporal(cita.getFecha(), cita.getHora(), cita.getCodigo());
+        }
+        
+        static ClaveTemporal de(PaginaCitas.Posicion posicion) {
+            return new ClaveTemporal(posicion.fecha, posicion.hora, posicion.codigo);
+        }
+        
+        /**
+         * Clave menor que cualquier cita de la fecha indicada
+         */
+        static ClaveTemporal inicioDe(LocalDate fecha) {
+            return new ClaveTemporal(fecha, null, "");
+        }
+        
+        /**
+         * Clave menor que cualquier cita posterior (estrictamente) al instante indicado
+         */
+        static ClaveTemporal despuesDe(LocalDateTime instante) {
+            LocalDateTime siguiente = instante.plusNanos(1);
+            return new ClaveTemporal(siguiente.toLocalDate(), siguiente.toLocalTime(), "");
+        }
+        
+        @Override
+        public int compareTo(ClaveTemporal otra) {
+            // Sin hora va primero en su fecha, como en la paginación
+            int comparacion = PaginaCitas.ORDEN_FECHA.compare(fecha, otra.fecha);
+            if (comparacion == 0) {
+                comparacion = PaginaCitas.ORDEN_HORA.compare(hora, otra.hora);
+            }
+            if (comparacion == 0) {
+                comparacion = codigo.compareTo(otra.codigo);
+            }
+            return comparacion;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ClaveTemporal && compareTo((ClaveTemporal) o) == 0;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(fecha, hora, codigo);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,306 @@
+package modelo;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Caché de lectura con tamaño acotado delante de otro repositorio
+ *
+ * Las pantallas Swing repiten las mismas consultas (buscar por código, citas
+ * de una fecha, horarios ocupados de un personal); esta clase las sirve desde
+ * memoria y solo consulta el repositorio real en un fallo de caché.
+ *
+ * - Cada consulta guarda como máximo "capacidad" entradas y descarta la menos
+ *   usada recientemente (LRU).
+ * - Toda escritura hecha a través de la caché invalida las entradas afectadas,
+ *   y también las que el repositorio real publica como eventos (OyenteCitas).
+ *   Las escrituras hechas desde otro proceso no se ven hasta llamar a
+ *   invalidarTodo().
+ * - Un contador de generación evita guardar un resultado leído antes de una
+ *   invalidación concurrente.
+ */
+public class RepositorioCitasCache implements IRepositorioCitas {
+    
+    public static final int CAPACIDAD_POR_DEFECTO = 512;
+    
+    private static volatile RepositorioCitasCache instancia;
+    
+    private final IRepositorioCitas delegado;
+    private final CacheLRU<String, Cita> porCodigo;
+    private final CacheLRU<LocalDate, List<Cita>> porFecha;
+    private final CacheLRU<List<Object>, List<LocalTime>> horariosOcupados;
+    
+    // Se incrementa en cada invalidación
+    private long generacion;
+    
+    public RepositorioCitasCache(IRepositorioCitas delegado, int capacidad) {
+        if (delegado == null || capacidad <= 0) {
+            throw new IllegalArgumentException("Se requiere un repositorio y una capacidad positiva");
+        }
+        this.delegado = delegado;
+        this.porCodigo = new CacheLRU<>(capacidad);
+        this.porFecha = new CacheLRU<>(capacidad);
+        this.horariosOcupados = new CacheLRU<>(capacidad);
+        
+        // Invalidar también lo que cambie en el repositorio real sin pasar por la caché
+        // (en una edición, también la fecha y el personal anteriores)
+        delegado.agregarOyente(evento -> {
+            invalidar(evento.getCita());
+            invalidar(evento.getCitaAnterior());
+        });
+    }
+    
+    /**
+     * Obtiene la caché compartida sobre RepositorioCitasMongo
+     * Todas las pantallas la comparten, así que una escritura en una se ve en las demás
+     */
+    public static RepositorioCitasCache obtenerInstancia() {
+        if (instancia == null) {
+            synchronized (RepositorioCitasCache.class) {
+                if (instancia == null) {
+                    instancia = new RepositorioCitasCache(RepositorioCitasMongo.obtenerInstancia(),
+                                                          CAPACIDAD_POR_DEFECTO);
+                }
+            }
+        }
+        return instancia;
+    }
+    
+    // ==================== LECTURAS EN CACHÉ ====================
+    
+    @Override
+    public Cita buscarPorCodigo(String codigo) {
+        if (codigo == null) {
+            return null;
+        }
+        return leer(porCodigo, codigo, () -> delegado.buscarPorCodigo(codigo));
+    }
+    
+    @Override
+    public List<Cita> obtenerPorFecha(LocalDate fecha) {
+        if (fecha == null) {
+            return delegado.obtenerPorFecha(null);
+        }
+        return new ArrayList<>(leer(porFecha, fecha, () -> delegado.obtenerPorFecha(fecha)));
+    }
+    
+    @Override
+    public List<LocalTime> obtenerHorariosOcupados(String personal, LocalDate fecha) {
+        List<Object> clave = Arrays.asList(personal, fecha);
+        return new ArrayList<>(leer(horariosOcupados, clave,
+                () -> delegado.obtenerHorariosOcupados(personal, fecha)));
+    }
+    
+    @Override
+    public boolean estaOcupado(String personal, LocalDate fecha, LocalTime hora) {
+        return hora != null && obtenerHorariosOcupados(personal, fecha).contains(hora);
+    }
+    
+    @Override
+    public DisponibilidadDia obtenerDisponibilidad(String personal, LocalDate fecha) {
+        return DisponibilidadDia.desdeHorarios(obtenerHorariosOcupados(personal, fecha));
+    }
+    
+    // ==================== LECTURAS DIRECTAS ====================
+    
+    @Override
+    public List<Cita> obtenerTodas() {
+        return delegado.obtenerTodas();
+    }
+    
+    @Override
+    public List<Cita> obtenerPorPersonal(String personal) {
+        return delegado.obtenerPorPersonal(personal);
+    }
+    
+    @Override
+    public List<Cita> obtenerPorRango(LocalDate desde, LocalDate hasta) {
+        return delegado.obtenerPorRango(desde, hasta);
+    }
+    
+    @Override
+    public List<Cita> obtenerPorServicio(String servicio) {
+        return delegado.obtenerPorServicio(servicio);
+    }
+    
+    @Override
+    public List<Cita> obtenerPorServicioYFecha(String servicio, LocalDate fecha) {
+        return delegado.obtenerPorServicioYFecha(servicio, fecha);
+    }
+    
+    @Override
+    public List<Cita> obtenerPorServicioYRango(String servicio, LocalDate desde, LocalDate hasta) {
+        return delegado.obtenerPorServicioYRango(servicio, desde, hasta);
+    }
+    
+    @Override
+    public List<Cita> obtenerPendientes() {
+        return delegado.obtenerPendientes();
+    }
+    
+    @Override
+    public List<Cita> obtenerCancelables() {
+        return delegado.obtenerCancelables();
+    }
+    
+    @Override
+    public long contarPorEstado(Cita.EstadoCita estado) {
+        return delegado.contarPorEstado(estado);
+    }
+    
+    @Override
+    public Map<Cita.EstadoCita, Long> obtenerConteoPorEstado() {
+        return delegado.obtenerConteoPorEstado();
+    }
+    
+    @Override
+    public Map<Cita.EstadoCita, Long> obtenerConteoPorEstado(String personal, String servicio,
+                                                             LocalDate desde, LocalDate hasta) {
+        return delegado.obtenerConteoPorEstado(personal, servicio, desde, hasta);
+    }
+    
+    @Override
+    public long contarTotal() {
+        return delegado.contarTotal();
+    }
+    
+    @Override
+    public Stream<Cita> streamTodas() {
+        return delegado.streamTodas();
+    }
+    
+    @Override
+    public Stream<Cita> streamPendientes() {
+        return delegado.streamPendientes();
+    }
+    
+    @Override
+    public Stream<Cita> streamPorPersonal(String personal) {
+        return delegado.streamPorPersonal(personal);
+    }
+    
+    @Override
+    public PaginaCitas obtenerPagina(String personal, Cita.EstadoCita estado, String continuacion, int tamano) {
+        return delegado.obtenerPagina(personal, estado, continuacion, tamano);
+    }
+    
+    // ==================== ESCRITURAS ====================
+    
+    @Override
+    public boolean guardar(Cita cita) {
+        boolean guardado = delegado.guardar(cita);
+        if (guardado) {
+            invalidar(cita);
+        }
+        return guardado;
+    }
+    
+    @Override
+    public ResultadoLote guardarLote(List<Cita> lote) {
+        ResultadoLote resultado = delegado.guardarLote(lote);
+        resultado.getAceptadas().forEach(this::invalidar);
+        return resultado;
+    }
+    
+    @Override
+    public boolean cancelarCita(String codigo) {
+        // La fecha y los horarios de la cita se invalidan con el evento del delegado
+        boolean cancelado = delegado.cancelarCita(codigo);
+        if (cancelado) {
+            invalidarCodigo(codigo);
+        }
+        return cancelado;
+    }
+    
+    // ==================== EVENTOS ====================
+    
+    @Override
+    public void agregarOyente(OyenteCitas oyente) {
+        delegado.agregarOyente(oyente);
+    }
+    
+    @Override
+    public void quitarOyente(OyenteCitas oyente) {
+        delegado.quitarOyente(oyente);
+    }
+    
+    /**
+     * Descarta las entradas que dependen de la cita (código, fecha y horarios del personal)
+     */
+    public synchronized void invalidar(Cita cita) {
+        if (cita == null) {
+            return;
+        }
+        generacion++;
+        porCodigo.remove(cita.getCodigo());
+        porFecha.remove(cita.getFecha());
+        horariosOcupados.remove(Arrays.asList(cita.getPersonal(), cita.getFecha()));
+    }
+    
+    /**
+     * Descarta la entrada de un código
+     */
+    public synchronized void invalidarCodigo(String codigo) {
+        generacion++;
+        porCodigo.remove(codigo);
+    }
+    
+    /**
+     * Vacía la caché (por ejemplo, tras escribir directamente en el repositorio real)
+     */
+    public synchronized void invalidarTodo() {
+        generacion++;
+        porCodigo.clear();
+        porFecha.clear();
+        horariosOcupados.clear();
+    }
+    
+    /**
+     * Lee una entrada de la caché o, si falta, del repositorio real
+     * La consulta al repositorio se hace fuera del bloqueo
+     */
+    private <K, V> V leer(CacheLRU<K, V> cache, K clave, Supplier<V> cargar) {
+        long inicio;
+        synchronized (this) {
+            V valor = cache.get(clave);
+            if (valor != null) {
+                return valor;
+            }
+            inicio = generacion;
+        }
+        
+        V valor = cargar.get();
+        synchronized (this) {
+            // Si hubo una invalidación mientras se consultaba, el valor puede estar desactualizado
+            if (valor != null && generacion == inicio) {
+                cache.put(clave, valor);
+            }
+        }
+        return valor;
+    }
+    
+    /**
+     * Mapa en orden de acceso que descarta la entrada menos usada al superar la capacidad
+     */
+    private static final class CacheLRU<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int capacidad;
+        
+        CacheLRU(int capacidad) {
+            super(16, 0.75f, true);
+            this.capacidad = capacidad;
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> mayor) {
+            return size() > capacidad;
+        }
+    }
+}
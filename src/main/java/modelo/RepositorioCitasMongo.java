@@ -1,18 +1,63 @@
 package modelo;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.Updates;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonType;
+import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Sorts.ascending;
 
 /**
  * Repositorio de Citas con persistencia en MongoDB
@@ -23,14 +68,108 @@ import static com.mongodb.client.model.Filters.*;
  * - READ: buscarPorCodigo(), obtenerTodas(), obtenerPorPersonal(), etc.
  * - UPDATE: actualizarCita(), cancelarCita()
  * - DELETE: eliminarCita()
+ * - Por lotes: encolarAlta(), encolarCambioEstado(), cambiarEstados() (bulkWrite)
+ * 
+ * Las citas finalizadas de días anteriores se archivan en una colección
+ * aparte (citas_archivo) con archivarFinalizadas() o, una vez al día, tras
+ * llamar a iniciarArchivadoDiario() (lo hace el punto de entrada de la
+ * aplicación, no el repositorio). Las consultas de reservas,
+ * disponibilidad y pendientes solo usan la colección de citas vigentes;
+ * las de historial y reportes también leen el archivo.
  */
-public class RepositorioCitasMongo {
+public class RepositorioCitasMongo implements IRepositorioCitas {
     
     private static RepositorioCitasMongo instancia;
-    private MongoCollection<CitaDTO> coleccionCitas;
+    private MongoCollection<Cita> coleccionCitas;
+    private MongoCollection<Cita> coleccionArchivo;
+    private MongoCollection<Document> coleccionEstadisticas;
     private MongoDatabase database;
     
+    // true si el índice de horarios pendientes está verificado; si no, guardar
+    // vuelve a comprobar el solapamiento antes de insertar
+    private volatile boolean horariosProtegidos;
+    
+    // Oyentes de las escrituras hechas a través de este repositorio
+    private final PublicadorEventos eventos = new PublicadorEventos();
+    
     private static final String COLECCION_CITAS = "citas";
+    private static final String COLECCION_ARCHIVO = "citas_archivo";
+    private static final String COLECCION_ESTADISTICAS = "estadisticas";
+    
+    // Documento con un contador por estado, actualizado en cada transición
+    private static final String ID_CONTADORES = "contadores_citas";
+    
+    // Campos del documento de contadores: versión (sube con cada actualización,
+    // para reconstruirlo sin pisar un $inc de otra instancia) y marca de
+    // desincronizado (una instancia no pudo actualizarlo)
+    private static final String CAMPO_VERSION = "version";
+    private static final String CAMPO_DESINCRONIZADOS = "desincronizados";
+    private static final int INTENTOS_RECUENTO = 3;
+    
+    // true si falló una actualización de contadores; la próxima lectura los reconstruye
+    private volatile boolean contadoresDesincronizados;
+    
+    // Proyección de las consultas de disponibilidad: solo la hora, sin _id, así
+    // el índice {personal, fecha, estado, hora} las cubre sin leer documentos
+    private static final Bson SOLO_HORA = Projections.fields(Projections.include("hora"), Projections.excludeId());
+    
+    // Documentos por lote al recorrer la colección con un cursor
+    private static final int TAMANO_LOTE = 500;
+    
+    // Espera máxima de una escritura encolada antes de enviar su lote
+    private static final long ESPERA_LOTE_MS = 50;
+    
+    // Archivado diario (null hasta iniciarArchivadoDiario)
+    private ScheduledExecutorService archivador;
+    
+    // Campo con la marca del último bulkWrite de cambios de estado que tocó la
+    // cita (CodecCita lo ignora al leer y no lo escribe)
+    private static final String CAMPO_MARCA_LOTE = "marcaLote";
+    
+    // Altas y cambios de estado encolados que se envían con bulkWrite
+    private final ColaEscrituras<OperacionCita> escrituras =
+        new ColaEscrituras<>("escrituras-citas", TAMANO_LOTE, ESPERA_LOTE_MS, this::escribirOperaciones);
+    
+    /**
+     * Índices de la colección de citas vigentes
+     * - codigo (único): búsquedas por código; la base de datos rechaza códigos repetidos
+     * - {personal, fecha, estado, hora}: estaOcupado y obtenerHorariosOcupados
+     *   (igualdad en todos los campos, sin recorrer otras citas; como solo
+     *   proyectan la hora, el índice las cubre)
+     * - {fecha, hora}: consultas por fecha y por rango, ya ordenadas (sirve
+     *   también como índice de fecha por ser su prefijo)
+     * - {servicio, fecha, hora}: consultas por servicio
+     */
+    private static final List<IndexModel> INDICES_CITAS = List.of(
+        new IndexModel(Indexes.ascending("codigo"), new IndexOptions().unique(true)),
+        new IndexModel(Indexes.ascending("personal", "fecha", "estado", "hora")),
+        new IndexModel(Indexes.ascending("fecha", "hora")),
+        new IndexModel(Indexes.ascending("servicio", "fecha", "hora"))
+    );
+    
+    private static final String INDICE_HORARIO = "horario_pendiente_unico";
+    
+    /**
+     * Índice único parcial {personal, fecha, hora} sobre las citas PENDIENTE:
+     * la base de datos admite una sola cita activa por horario, así que la
+     * reserva del horario es el propio insert (también entre varias JVM).
+     * Las citas canceladas o atendidas salen del índice y liberan el horario.
+     */
+    private static final IndexModel INDICE_HORARIO_PENDIENTE = new IndexModel(
+        Indexes.ascending("personal", "fecha", "hora"),
+        new IndexOptions().unique(true).name(INDICE_HORARIO)
+            .partialFilterExpression(eq("estado", Cita.EstadoCita.PENDIENTE.name()))
+    );
+    
+    /**
+     * Índices del archivo (solo historial: código, fechas, personal y servicio)
+     */
+    private static final List<IndexModel> INDICES_ARCHIVO = List.of(
+        new IndexModel(Indexes.ascending("codigo"), new IndexOptions().unique(true)),
+        new IndexModel(Indexes.ascending("fecha", "hora")),
+        new IndexModel(Indexes.ascending("personal")),
+        new IndexModel(Indexes.ascending("servicio", "fecha", "hora"))
+    );
     
     /**
      * Constructor privado (Singleton)
@@ -39,7 +178,28 @@ public class RepositorioCitasMongo {
         try {
             MongoDBConfig config = MongoDBConfig.obtenerInstancia();
             database = config.getDatabase();
-            coleccionCitas = database.getCollection(COLECCION_CITAS, CitaDTO.class);
+            coleccionCitas = database.getCollection(COLECCION_CITAS, Cita.class);
+            coleccionArchivo = database.getCollection(COLECCION_ARCHIVO, Cita.class);
+            coleccionEstadisticas = database.getCollection(COLECCION_ESTADISTICAS);
+            
+            // Pasar a fechas y horas nativas los documentos guardados como texto
+            migrarDocumentosAntiguos(coleccionCitas);
+            migrarDocumentosAntiguos(coleccionArchivo);
+            
+            // Crear los índices que falten y verificarlos
+            config.asegurarIndices(coleccionCitas, INDICES_CITAS);
+            config.asegurarIndices(coleccionArchivo, INDICES_ARCHIVO);
+            horariosProtegidos = config.asegurarIndices(coleccionCitas, List.of(INDICE_HORARIO_PENDIENTE));
+            if (!horariosProtegidos) {
+                System.err.println("⚠️ Hay horarios pendientes repetidos; se validará el solapamiento antes de cada alta");
+            }
+            
+            // Los contadores se reconstruyen al iniciar solo si faltan o si alguna
+            // instancia no pudo actualizarlos (recorrer la colección es caro y
+            // compite con los $inc de las demás instancias)
+            if (contadoresPorReconstruir()) {
+                recalcularContadores();
+            }
             
             System.out.println("✅ RepositorioCitasMongo inicializado");
             System.out.println("📁 Colección: " + COLECCION_CITAS);
@@ -68,6 +228,8 @@ public class RepositorioCitasMongo {
     
     /**
      * Guarda una nueva cita en MongoDB
+     * El horario se reserva con el propio insert: el índice único de horarios
+     * pendientes rechaza la cita si otra ya lo ocupa
      * 
      * @param cita La cita a guardar
      * @return true si se guardó exitosamente, false en caso contrario
@@ -79,25 +241,36 @@ public class RepositorioCitasMongo {
                 return false;
             }
             
-            // Validar que no exista solapamiento
-            if (!ValidadorCitas.validarNoSolapamiento(
+            // Sin el índice de horarios hay que validar el solapamiento antes
+            if (!horariosProtegidos && !ValidadorCitas.validarNoSolapamiento(
                     cita.getPersonal(), 
                     cita.getFecha(), 
                     cita.getHora(), 
-                    obtenerTodas())) {
+                    obtenerPorFecha(cita.getFecha()))) {
                 System.err.println("⚠️ El horario ya está ocupado");
                 return false;
             }
             
-            // Convertir Cita a CitaDTO para MongoDB
-            CitaDTO citaDTO = convertirACitaDTO(cita);
-            
-            // Insertar en MongoDB
-            coleccionCitas.insertOne(citaDTO);
+            // Insertar en MongoDB (CodecCita escribe el documento)
+            coleccionCitas.insertOne(cita);
+            incrementarContador(cita.getEstado(), 1);
             
             System.out.println("✅ Cita guardada: " + cita.getCodigo());
+            eventos.publicar(EventoCita.creada(cita));
             return true;
             
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                if (esHorarioOcupado(e.getError().getMessage())) {
+                    System.err.println("⚠️ El horario ya está ocupado");
+                } else {
+                    System.err.println("⚠️ Ya existe una cita con el código " + cita.getCodigo());
+                }
+                return false;
+            }
+            System.err.println("❌ Error al guardar cita: " + e.getMessage());
+            e.printStackTrace();
+            return false;
         } catch (Exception e) {
             System.err.println("❌ Error al guardar cita: " + e.getMessage());
             e.printStackTrace();
@@ -105,6 +278,119 @@ public class RepositorioCitasMongo {
         }
     }
     
+    /**
+     * Guarda un lote de citas en MongoDB
+     * El lote se valida con una consulta de códigos en el archivo y las citas
+     * se insertan con un solo insertMany sin orden; los índices únicos de
+     * códigos y de horarios pendientes rechazan cada cita repetida u ocupada
+     */
+    public ResultadoLote guardarLote(List<Cita> lote) {
+        ResultadoLote.Motivo[] motivos = ResultadoLote.prevalidar(lote);
+        Set<String> codigos = new HashSet<>();
+        Set<BsonDateTime> fechas = new HashSet<>();
+        for (int i = 0; i < motivos.length; i++) {
+            Cita cita = lote.get(i);
+            if (motivos[i] == null) {
+                codigos.add(cita.getCodigo());
+                fechas.add(CodecCita.valorFecha(cita.getFecha()));
+            }
+        }
+        if (codigos.isEmpty()) {
+            return new ResultadoLote(lote, motivos);
+        }
+        
+        try {
+            // El índice único no abarca el archivo
+            Set<String> existentes = new HashSet<>();
+            coleccionArchivo.find(in("codigo", codigos))
+                .projection(Projections.include("codigo"))
+                .forEach(cita -> existentes.add(cita.getCodigo()));
+            
+            // Sin el índice de horarios, los ocupados se consultan antes
+            Set<List<Object>> ocupados = new HashSet<>();
+            if (!horariosProtegidos) {
+                coleccionCitas.find(and(in("fecha", fechas), eq("estado", "PENDIENTE")))
+                    .projection(Projections.include("personal", "fecha", "hora"))
+                    .forEach(cita -> ocupados.add(Arrays.asList(cita.getPersonal(), cita.getFecha(), cita.getHora())));
+            }
+            
+            List<Cita> documentos = new ArrayList<>();
+            List<Integer> posiciones = new ArrayList<>();
+            for (int i = 0; i < motivos.length; i++) {
+                if (motivos[i] != null) {
+                    continue;
+                }
+                Cita cita = lote.get(i);
+                if (existentes.contains(cita.getCodigo())) {
+                    motivos[i] = ResultadoLote.Motivo.CODIGO_REPETIDO;
+                } else if (ocupados.contains(Arrays.asList(cita.getPersonal(), cita.getFecha(), cita.getHora()))) {
+                    motivos[i] = ResultadoLote.Motivo.HORARIO_OCUPADO;
+                } else {
+                    motivos[i] = ResultadoLote.Motivo.ACEPTADA;
+                    documentos.add(cita);
+                    posiciones.add(i);
+                }
+            }
+            
+            if (!documentos.isEmpty()) {
+                try {
+                    coleccionCitas.insertMany(documentos, new InsertManyOptions().ordered(false));
+                } catch (MongoBulkWriteException e) {
+                    // Sin orden, el resto del lote se inserta aunque falle alguna cita
+                    for (BulkWriteError error : e.getWriteErrors()) {
+                        motivos[posiciones.get(error.getIndex())] = motivoDe(error);
+                    }
+                }
+                
+                Map<Cita.EstadoCita, Long> altas = new EnumMap<>(Cita.EstadoCita.class);
+                for (int posicion : posiciones) {
+                    if (motivos[posicion] == ResultadoLote.Motivo.ACEPTADA) {
+                        altas.merge(lote.get(posicion).getEstado(), 1L, Long::sum);
+                    }
+                }
+                altas.forEach(this::incrementarContador);
+                
+                for (int posicion : posiciones) {
+                    if (motivos[posicion] == ResultadoLote.Motivo.ACEPTADA) {
+                        eventos.publicar(EventoCita.creada(lote.get(posicion)));
+                    }
+                }
+            }
+            
+        } catch (Exception e) {
+            System.err.println("❌ Error al guardar lote de citas: " + e.getMessage());
+            for (int i = 0; i < motivos.length; i++) {
+                if (motivos[i] == null || motivos[i] == ResultadoLote.Motivo.ACEPTADA) {
+                    motivos[i] = ResultadoLote.Motivo.ERROR_ESCRITURA;
+                }
+            }
+        }
+        
+        ResultadoLote resultado = new ResultadoLote(lote, motivos);
+        System.out.println("✅ Lote guardado: " + resultado.contarAceptadas() + " de " + lote.size() + " citas");
+        return resultado;
+    }
+    
+    /**
+     * Motivo de rechazo de una cita del lote según el error de escritura
+     */
+    private static ResultadoLote.Motivo motivoDe(BulkWriteError error) {
+        if (error.getCategory() != ErrorCategory.DUPLICATE_KEY) {
+            return ResultadoLote.Motivo.ERROR_ESCRITURA;
+        }
+        return esHorarioOcupado(error.getMessage())
+            ? ResultadoLote.Motivo.HORARIO_OCUPADO
+            : ResultadoLote.Motivo.CODIGO_REPETIDO;
+    }
+    
+    /**
+     * Verifica si una clave duplicada la rechazó el índice de horarios
+     * pendientes (y no el de códigos)
+     */
+    private static boolean esHorarioOcupado(String mensaje) {
+        return mensaje != null && mensaje.contains(INDICE_HORARIO);
+    }
+    
     // ==================== READ ====================
     
     /**
@@ -115,13 +401,12 @@ public class RepositorioCitasMongo {
      */
     public Cita buscarPorCodigo(String codigo) {
         try {
-            CitaDTO citaDTO = coleccionCitas.find(eq("codigo", codigo)).first();
-            
-            if (citaDTO != null) {
-                return convertirACita(citaDTO);
+            Cita cita = coleccionCitas.find(eq("codigo", codigo)).first();
+            if (cita == null) {
+                cita = coleccionArchivo.find(eq("codigo", codigo)).first();
             }
             
-            return null;
+            return cita;
             
         } catch (Exception e) {
             System.err.println("❌ Error al buscar cita: " + e.getMessage());
@@ -138,8 +423,10 @@ public class RepositorioCitasMongo {
         List<Cita> citas = new ArrayList<>();
         
         try {
-            coleccionCitas.find().into(new ArrayList<>())
-                .forEach(citaDTO -> citas.add(convertirACita(citaDTO)));
+            coleccionCitas.find()
+                .forEach(citas::add);
+            coleccionArchivo.find()
+                .forEach(citas::add);
                 
         } catch (Exception e) {
             System.err.println("❌ Error al obtener citas: " + e.getMessage());
@@ -158,8 +445,10 @@ public class RepositorioCitasMongo {
         List<Cita> citas = new ArrayList<>();
         
         try {
-            coleccionCitas.find(eq("personal", personal)).into(new ArrayList<>())
-                .forEach(citaDTO -> citas.add(convertirACita(citaDTO)));
+            coleccionCitas.find(eq("personal", personal))
+                .forEach(citas::add);
+            coleccionArchivo.find(eq("personal", personal))
+                .forEach(citas::add);
                 
         } catch (Exception e) {
             System.err.println("❌ Error al obtener citas por personal: " + e.getMessage());
@@ -170,6 +459,7 @@ public class RepositorioCitasMongo {
     
     /**
      * Obtiene citas por fecha
+     * El archivo solo se consulta para fechas pasadas
      * 
      * @param fecha Fecha a buscar
      * @return Lista de citas en esa fecha
@@ -178,9 +468,13 @@ public class RepositorioCitasMongo {
         List<Cita> citas = new ArrayList<>();
         
         try {
-            String fechaStr = fecha.toString();
-            coleccionCitas.find(eq("fecha", fechaStr)).into(new ArrayList<>())
-                .forEach(citaDTO -> citas.add(convertirACita(citaDTO)));
+            BsonDateTime valorFecha = CodecCita.valorFecha(fecha);
+            coleccionCitas.find(eq("fecha", valorFecha))
+                .forEach(citas::add);
+            if (fecha.isBefore(LocalDate.now())) {
+                coleccionArchivo.find(eq("fecha", valorFecha))
+                    .forEach(citas::add);
+            }
                 
         } catch (Exception e) {
             System.err.println("❌ Error al obtener citas por fecha: " + e.getMessage());
@@ -189,15 +483,127 @@ public class RepositorioCitasMongo {
         return citas;
     }
     
+    /**
+     * Obtiene citas entre dos fechas (ambas inclusive), ordenadas por fecha y hora
+     * Usa el índice {fecha, hora} con un rango de fechas nativas. El archivo
+     * solo se consulta si el rango empieza antes de hoy
+     * 
+     * @param desde Fecha inicial
+     * @param hasta Fecha final
+     * @return Lista de citas en el rango
+     */
+    public List<Cita> obtenerPorRango(LocalDate desde, LocalDate hasta) {
+        List<Cita> citas = new ArrayList<>();
+        
+        try {
+            Bson filtro = and(
+                gte("fecha", CodecCita.valorFecha(desde)),
+                lte("fecha", CodecCita.valorFecha(hasta))
+            );
+            
+            coleccionCitas.find(filtro)
+                .sort(ascending("fecha", "hora"))
+                .forEach(citas::add);
+            if (desde.isBefore(LocalDate.now())) {
+                coleccionArchivo.find(filtro)
+                    .forEach(citas::add);
+                citas.sort(PaginaCitas.ORDEN);
+            }
+                
+        } catch (Exception e) {
+            System.err.println("❌ Error al obtener citas por rango: " + e.getMessage());
+        }
+        
+        return citas;
+    }
+    
+    /**
+     * Obtiene citas por servicio, ordenadas por fecha y hora
+     * Usa el índice {servicio, fecha, hora}
+     * 
+     * @param servicio Nombre del servicio
+     * @return Lista de citas del servicio
+     */
+    public List<Cita> obtenerPorServicio(String servicio) {
+        return buscarPorServicio(eq("servicio", servicio), true);
+    }
+    
+    /**
+     * Obtiene citas de un servicio en una fecha, ordenadas por hora
+     * 
+     * @param servicio Nombre del servicio
+     * @param fecha Fecha a buscar
+     * @return Lista de citas del servicio en esa fecha
+     */
+    public List<Cita> obtenerPorServicioYFecha(String servicio, LocalDate fecha) {
+        if (fecha == null) {
+            return new ArrayList<>();
+        }
+        return buscarPorServicio(and(eq("servicio", servicio), eq("fecha", CodecCita.valorFecha(fecha))),
+                                 fecha.isBefore(LocalDate.now()));
+    }
+    
+    /**
+     * Obtiene citas de un servicio entre dos fechas (ambas inclusive), ordenadas por fecha y hora
+     * 
+     * @param servicio Nombre del servicio
+     * @param desde Fecha inicial
+     * @param hasta Fecha final
+     * @return Lista de citas del servicio en el rango
+     */
+    public List<Cita> obtenerPorServicioYRango(String servicio, LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null) {
+            return new ArrayList<>();
+        }
+        Bson filtro = and(
+            eq("servicio", servicio),
+            gte("fecha", CodecCita.valorFecha(desde)),
+            lte("fecha", CodecCita.valorFecha(hasta))
+        );
+        return buscarPorServicio(filtro, desde.isBefore(LocalDate.now()));
+    }
+    
+    /**
+     * Consulta por servicio sobre las citas vigentes y, si se pide, el archivo
+     */
+    private List<Cita> buscarPorServicio(Bson filtro, boolean incluirArchivo) {
+        List<Cita> citas = new ArrayList<>();
+        
+        try {
+            coleccionCitas.find(filtro)
+                .sort(ascending("servicio", "fecha", "hora"))
+                .forEach(citas::add);
+            if (incluirArchivo) {
+                coleccionArchivo.find(filtro)
+                    .forEach(citas::add);
+                citas.sort(PaginaCitas.ORDEN);
+            }
+                
+        } catch (Exception e) {
+            System.err.println("❌ Error al obtener citas por servicio: " + e.getMessage());
+        }
+        
+        return citas;
+    }
+    
     /**
      * Obtiene citas pendientes
      * 
      * @return Lista de citas con estado PENDIENTE
      */
     public List<Cita> obtenerPendientes() {
-        return obtenerTodas().stream()
-            .filter(c -> c.getEstado() == Cita.EstadoCita.PENDIENTE)
-            .collect(Collectors.toList());
+        List<Cita> citas = new ArrayList<>();
+        
+        try {
+            coleccionCitas.find(eq("estado", Cita.EstadoCita.PENDIENTE.name()))
+                .sort(ascending("fecha", "hora"))
+                .forEach(citas::add);
+                
+        } catch (Exception e) {
+            System.err.println("❌ Error al obtener citas pendientes: " + e.getMessage());
+        }
+        
+        return citas;
     }
     
     /**
@@ -206,13 +612,150 @@ public class RepositorioCitasMongo {
      * @return Lista de citas que pueden ser canceladas
      */
     public List<Cita> obtenerCancelables() {
-        return obtenerTodas().stream()
-            .filter(Cita::puedeCancelar)
-            .collect(Collectors.toList());
+        List<Cita> citas = new ArrayList<>();
+        
+        try {
+            // Una sola lectura del reloj; el servidor filtra por el límite de cancelación
+            coleccionCitas.find(filtroCancelables(LocalDateTime.now()))
+                .sort(ascending("fecha", "hora"))
+                .forEach(citas::add);
+                
+        } catch (Exception e) {
+            System.err.println("❌ Error al obtener citas cancelables: " + e.getMessage());
+        }
+        
+        return citas;
+    }
+    
+    // ==================== RECORRIDOS Y PAGINACIÓN ====================
+    
+    /**
+     * Recorre todas las citas con un cursor, convirtiendo cada documento al
+     * leerlo (memoria constante). Cerrar el stream cierra el cursor.
+     * 
+     * @return Stream de citas (vacío si hay un error al abrir el cursor)
+     */
+    public Stream<Cita> streamTodas() {
+        return Stream.concat(recorrer(coleccionCitas, new Document()),
+                             recorrer(coleccionArchivo, new Document()));
+    }
+    
+    /**
+     * Recorre las citas pendientes con un cursor
+     */
+    public Stream<Cita> streamPendientes() {
+        return recorrer(coleccionCitas, eq("estado", Cita.EstadoCita.PENDIENTE.name()));
+    }
+    
+    /**
+     * Recorre las citas de un personal con un cursor
+     */
+    public Stream<Cita> streamPorPersonal(String personal) {
+        return Stream.concat(recorrer(coleccionCitas, eq("personal", personal)),
+                             recorrer(coleccionArchivo, eq("personal", personal)));
+    }
+    
+    /**
+     * Obtiene una página de citas en orden (fecha, hora, código)
+     * La continuación se traduce en un filtro "posterior a la última cita",
+     * así que el servidor no recorre ni descarta las páginas anteriores
+     * 
+     * @param personal Personal a filtrar, o null para todos
+     * @param estado Estado a filtrar, o null para todos
+     * @param continuacion Continuación de la página anterior, o null para la primera
+     * @param tamano Cantidad máxima de citas de la página
+     * @return Página de citas (vacía si hay un error)
+     */
+    public PaginaCitas obtenerPagina(String personal, Cita.EstadoCita estado, String continuacion, int tamano) {
+        PaginaCitas.validarTamano(tamano);
+        PaginaCitas.Posicion posicion = PaginaCitas.Posicion.de(continuacion);
+        
+        List<Bson> condiciones = new ArrayList<>();
+        if (personal != null) {
+            condiciones.add(eq("personal", personal));
+        }
+        if (estado != null) {
+            condiciones.add(eq("estado", estado.name()));
+        }
+        if (posicion != null) {
+            // Un campo que falta va primero en el orden de MongoDB: "después" de null
+            // es cualquier valor
+            BsonDateTime fecha = posicion.fecha != null ? CodecCita.valorFecha(posicion.fecha) : null;
+            Integer hora = posicion.hora != null ? CodecCita.valorHora(posicion.hora) : null;
+            condiciones.add(or(
+                fecha != null ? gt("fecha", fecha) : ne("fecha", null),
+                and(eq("fecha", fecha), hora != null ? gt("hora", hora) : ne("hora", null)),
+                and(eq("fecha", fecha), eq("hora", hora), gt("codigo", posicion.codigo))
+            ));
+        }
+        
+        Bson filtro = condiciones.isEmpty() ? new Document() : and(condiciones);
+        List<Cita> leidas = new ArrayList<>(tamano + 1);
+        try {
+            // Se pide una cita de más para saber si hay otra página
+            coleccionCitas.find(filtro)
+                .sort(ascending("fecha", "hora", "codigo"))
+                .limit(tamano + 1)
+                .forEach(leidas::add);
+            
+            // Las pendientes nunca se archivan; si no, se mezclan las dos colecciones
+            if (estado != Cita.EstadoCita.PENDIENTE) {
+                coleccionArchivo.find(filtro)
+                    .sort(ascending("fecha", "hora", "codigo"))
+                    .limit(tamano + 1)
+                    .forEach(leidas::add);
+                leidas.sort(PaginaCitas.ORDEN);
+                if (leidas.size() > tamano + 1) {
+                    leidas.subList(tamano + 1, leidas.size()).clear();
+                }
+            }
+                
+        } catch (Exception e) {
+            System.err.println("❌ Error al obtener página de citas: " + e.getMessage());
+            return new PaginaCitas(new ArrayList<>(), null);
+        }
+        
+        return PaginaCitas.desde(leidas, tamano);
+    }
+    
+    /**
+     * Abre un cursor con el filtro y lo expone como Stream
+     */
+    private Stream<Cita> recorrer(MongoCollection<Cita> coleccion, Bson filtro) {
+        try {
+            MongoCursor<Cita> cursor = coleccion.find(filtro).batchSize(TAMANO_LOTE).iterator();
+            return StreamSupport.stream(
+                    Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
+                
+        } catch (Exception e) {
+            System.err.println("❌ Error al recorrer citas: " + e.getMessage());
+            return Stream.empty();
+        }
+    }
+    
+    /**
+     * Filtro de citas PENDIENTES que empiezan más de 2 horas después de "ahora"
+     * (las horas se guardan en minutos, así que una cita del mismo minuto que
+     * el límite nunca es posterior a él)
+     */
+    private Bson filtroCancelables(LocalDateTime ahora) {
+        LocalDateTime limite = ahora.plusHours(2);
+        BsonDateTime fechaLimite = CodecCita.valorFecha(limite.toLocalDate());
+        
+        return and(
+            eq("estado", Cita.EstadoCita.PENDIENTE.name()),
+            or(
+                gt("fecha", fechaLimite),
+                and(eq("fecha", fechaLimite), gt("hora", CodecCita.valorHora(limite.toLocalTime())))
+            )
+        );
     }
     
     /**
      * Verifica si un horario está ocupado
+     * Consulta cubierta por el índice {personal, fecha, estado, hora}: no lee
+     * el documento ni lo decodifica como Cita
      * 
      * @param personal Nombre del personal
      * @param fecha Fecha de la cita
@@ -223,12 +766,15 @@ public class RepositorioCitasMongo {
         try {
             Bson filtro = and(
                 eq("personal", personal),
-                eq("fecha", fecha.toString()),
-                eq("hora", hora.toString()),
+                eq("fecha", CodecCita.valorFecha(fecha)),
+                eq("hora", CodecCita.valorHora(hora)),
                 eq("estado", "PENDIENTE")
             );
             
-            return coleccionCitas.find(filtro).first() != null;
+            return coleccionCitas.find(filtro, BsonDocument.class)
+                .projection(SOLO_HORA)
+                .limit(1)
+                .first() != null;
             
         } catch (Exception e) {
             System.err.println("❌ Error al verificar disponibilidad: " + e.getMessage());
@@ -238,6 +784,8 @@ public class RepositorioCitasMongo {
     
     /**
      * Obtiene horarios ocupados para un personal en una fecha
+     * Consulta cubierta por el índice {personal, fecha, estado, hora}; de
+     * cada entrada solo se lee la hora
      * 
      * @param personal Nombre del personal
      * @param fecha Fecha a consultar
@@ -249,12 +797,13 @@ public class RepositorioCitasMongo {
         try {
             Bson filtro = and(
                 eq("personal", personal),
-                eq("fecha", fecha.toString()),
+                eq("fecha", CodecCita.valorFecha(fecha)),
                 eq("estado", "PENDIENTE")
             );
             
-            coleccionCitas.find(filtro).into(new ArrayList<>())
-                .forEach(citaDTO -> horarios.add(LocalTime.parse(citaDTO.getHora())));
+            coleccionCitas.find(filtro, BsonDocument.class)
+                .projection(SOLO_HORA)
+                .forEach(documento -> horarios.add(CodecCita.leerHora(documento.get("hora"))));
                 
         } catch (Exception e) {
             System.err.println("❌ Error al obtener horarios ocupados: " + e.getMessage());
@@ -263,6 +812,18 @@ public class RepositorioCitasMongo {
         return horarios;
     }
     
+    /**
+     * Obtiene la disponibilidad del personal en una fecha como mapa de bits
+     * de bloques de 15 minutos (HU-01 / HU-02)
+     * 
+     * @param personal Nombre del personal
+     * @param fecha Fecha a consultar
+     * @return Disponibilidad del día
+     */
+    public DisponibilidadDia obtenerDisponibilidad(String personal, LocalDate fecha) {
+        return DisponibilidadDia.desdeHorarios(obtenerHorariosOcupados(personal, fecha));
+    }
+    
     /**
      * Cuenta citas por estado
      * 
@@ -270,12 +831,156 @@ public class RepositorioCitasMongo {
      * @return Número de citas en ese estado
      */
     public long contarPorEstado(Cita.EstadoCita estado) {
+        return obtenerConteoPorEstado().get(estado);
+    }
+    
+    /**
+     * Obtiene el conteo de citas de todos los estados en una sola lectura
+     * del documento de contadores (sin recorrer la colección)
+     * Si una actualización de contadores falló, antes se reconstruyen
+     * 
+     * @return Mapa estado -> número de citas
+     */
+    public Map<Cita.EstadoCita, Long> obtenerConteoPorEstado() {
+        if (contadoresDesincronizados) {
+            contadoresDesincronizados = false;
+            recalcularContadores();
+        }
+        
+        Map<Cita.EstadoCita, Long> conteo = new EnumMap<>(Cita.EstadoCita.class);
+        for (Cita.EstadoCita estado : Cita.EstadoCita.values()) {
+            conteo.put(estado, 0L);
+        }
+        
         try {
-            return coleccionCitas.countDocuments(eq("estado", estado.name()));
+            Document contadores = coleccionEstadisticas.find(eq("_id", ID_CONTADORES)).first();
+            if (contadores != null) {
+                for (Cita.EstadoCita estado : Cita.EstadoCita.values()) {
+                    Number valor = contadores.get(estado.name(), Number.class);
+                    conteo.put(estado, valor != null ? valor.longValue() : 0L);
+                }
+            }
         } catch (Exception e) {
             System.err.println("❌ Error al contar por estado: " + e.getMessage());
-            return 0;
         }
+        
+        return conteo;
+    }
+    
+    /**
+     * Obtiene el conteo por estado de las citas que cumplen los filtros
+     * (null = sin filtro) con una sola agregación ($match + $group) sobre las
+     * citas vigentes y, si el rango puede incluir días pasados, el archivo
+     * ($unionWith). Sin filtros se lee el documento de contadores.
+     * 
+     * @return Mapa estado -> número de citas
+     */
+    public Map<Cita.EstadoCita, Long> obtenerConteoPorEstado(String personal, String servicio,
+                                                             LocalDate desde, LocalDate hasta) {
+        if (personal == null && servicio == null && desde == null && hasta == null) {
+            return obtenerConteoPorEstado();
+        }
+        
+        List<Bson> condiciones = new ArrayList<>();
+        if (personal != null) {
+            condiciones.add(eq("personal", personal));
+        }
+        if (servicio != null) {
+            condiciones.add(eq("servicio", servicio));
+        }
+        if (desde != null) {
+            condiciones.add(gte("fecha", CodecCita.valorFecha(desde)));
+        }
+        if (hasta != null) {
+            condiciones.add(lte("fecha", CodecCita.valorFecha(hasta)));
+        }
+        
+        try {
+            return agruparPorEstado(and(condiciones), desde == null || desde.isBefore(LocalDate.now()));
+        } catch (Exception e) {
+            System.err.println("❌ Error al contar por estado: " + e.getMessage());
+            Map<Cita.EstadoCita, Long> conteo = new EnumMap<>(Cita.EstadoCita.class);
+            for (Cita.EstadoCita estado : Cita.EstadoCita.values()) {
+                conteo.put(estado, 0L);
+            }
+            return conteo;
+        }
+    }
+    
+    /**
+     * Cuenta por estado en el servidor, en un solo viaje
+     * (los índices por personal, servicio o fecha resuelven el $match)
+     */
+    private Map<Cita.EstadoCita, Long> agruparPorEstado(Bson filtro, boolean incluirArchivo) {
+        List<Bson> etapas = new ArrayList<>();
+        etapas.add(Aggregates.match(filtro));
+        if (incluirArchivo) {
+            etapas.add(Aggregates.unionWith(COLECCION_ARCHIVO, List.of(Aggregates.match(filtro))));
+        }
+        etapas.add(Aggregates.group("$estado", Accumulators.sum("total", 1)));
+        
+        Map<Cita.EstadoCita, Long> conteo = new EnumMap<>(Cita.EstadoCita.class);
+        for (Cita.EstadoCita estado : Cita.EstadoCita.values()) {
+            conteo.put(estado, 0L);
+        }
+        coleccionCitas.aggregate(etapas, Document.class).forEach(grupo ->
+            conteo.put(Cita.EstadoCita.valueOf(grupo.getString("_id")), grupo.get("total", Number.class).longValue()));
+        return conteo;
+    }
+    
+    /**
+     * Reconstruye el documento de contadores contando la colección
+     * Se hace al iniciar (si falta o quedó marcado) y después de una
+     * actualización de contadores fallida
+     *
+     * El recuento reemplaza el documento solo si su versión sigue siendo la
+     * leída antes de contar: si otra instancia sumó entretanto, se vuelve a
+     * contar en lugar de pisar su $inc.
+     */
+    public void recalcularContadores() {
+        try {
+            for (int intento = 0; intento < INTENTOS_RECUENTO; intento++) {
+                Document actual = coleccionEstadisticas.find(eq("_id", ID_CONTADORES)).first();
+                Document contadores = new Document("_id", ID_CONTADORES);
+                agruparPorEstado(new Document(), true)
+                    .forEach((estado, total) -> contadores.append(estado.name(), total));
+                
+                if (actual == null) {
+                    contadores.append(CAMPO_VERSION, 1L);
+                    try {
+                        coleccionEstadisticas.insertOne(contadores);
+                        return;
+                    } catch (MongoWriteException e) {
+                        if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                            throw e;
+                        }
+                        // Otra instancia lo creó entretanto
+                        continue;
+                    }
+                }
+                
+                Number version = actual.get(CAMPO_VERSION, Number.class);
+                contadores.append(CAMPO_VERSION, version != null ? version.longValue() + 1 : 1L);
+                if (coleccionEstadisticas.replaceOne(
+                        and(eq("_id", ID_CONTADORES), eq(CAMPO_VERSION, version)), contadores)
+                        .getMatchedCount() > 0) {
+                    return;
+                }
+            }
+            contadoresDesincronizados = true;
+            System.err.println("⚠️ Los contadores cambiaron durante el recuento; se reintentará");
+        } catch (Exception e) {
+            contadoresDesincronizados = true;
+            System.err.println("❌ Error al recalcular contadores: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Verifica si falta el documento de contadores o alguna instancia lo marcó como desincronizado
+     */
+    private boolean contadoresPorReconstruir() {
+        Document contadores = coleccionEstadisticas.find(eq("_id", ID_CONTADORES)).first();
+        return contadores == null || Boolean.TRUE.equals(contadores.getBoolean(CAMPO_DESINCRONIZADOS));
     }
     
     /**
@@ -285,7 +990,7 @@ public class RepositorioCitasMongo {
      */
     public long contarTotal() {
         try {
-            return coleccionCitas.countDocuments();
+            return coleccionCitas.countDocuments() + coleccionArchivo.countDocuments();
         } catch (Exception e) {
             System.err.println("❌ Error al contar total: " + e.getMessage());
             return 0;
@@ -295,10 +1000,12 @@ public class RepositorioCitasMongo {
     // ==================== UPDATE ====================
     
     /**
-     * Actualiza una cita existente
-     * 
+     * Actualiza una cita existente, vigente o archivada
+     * Una cita archivada que vuelve a PENDIENTE regresa a las vigentes, que
+     * son las que consultan las reservas y la disponibilidad
+     *
      * @param cita Cita con los datos actualizados
-     * @return true si se actualizó exitosamente
+     * @return true si se actualizó; false si no existe en ninguna colección
      */
     public boolean actualizarCita(Cita cita) {
         try {
@@ -306,19 +1013,40 @@ public class RepositorioCitasMongo {
                 return false;
             }
             
-            CitaDTO citaDTO = convertirACitaDTO(cita);
-            
             Bson filtro = eq("codigo", cita.getCodigo());
             Bson actualizacion = Updates.combine(
-                Updates.set("servicio", citaDTO.getServicio()),
-                Updates.set("personal", citaDTO.getPersonal()),
-                Updates.set("fecha", citaDTO.getFecha()),
-                Updates.set("hora", citaDTO.getHora()),
-                Updates.set("motivo", citaDTO.getMotivo()),
-                Updates.set("estado", citaDTO.getEstado())
+                Updates.set("servicio", cita.getServicio()),
+                Updates.set("personal", cita.getPersonal()),
+                Updates.set("fecha", CodecCita.valorFecha(cita.getFecha())),
+                Updates.set("hora", CodecCita.valorHora(cita.getHora())),
+                Updates.set("motivo", cita.getMotivo()),
+                Updates.set("estado", cita.getEstado().name())
             );
             
-            coleccionCitas.updateOne(filtro, actualizacion);
+            // Obtener el documento anterior para ajustar los contadores en la misma operación
+            Cita anterior = coleccionCitas.findOneAndUpdate(filtro, actualizacion,
+                new FindOneAndUpdateOptions().returnDocument(ReturnDocument.BEFORE));
+            if (anterior == null) {
+                anterior = actualizarArchivada(cita, filtro, actualizacion);
+            }
+            
+            if (anterior == null) {
+                System.err.println("⚠️ No se encontró la cita: " + cita.getCodigo());
+                return false;
+            }
+            
+            if (anterior.getEstado() != cita.getEstado()) {
+                ajustarContadores(anterior.getEstado(), cita.getEstado());
+            }
+            // La caché y las pantallas dependen del evento (también de la fecha,
+            // la hora y el personal anteriores si cambiaron)
+            if (mismosDatos(anterior, cita)) {
+                if (anterior.getEstado() != cita.getEstado()) {
+                    eventos.publicar(EventoCita.estadoCambiado(cita, anterior.getEstado()));
+                }
+            } else {
+                eventos.publicar(EventoCita.actualizada(cita, anterior));
+            }
             
             System.out.println("✅ Cita actualizada: " + cita.getCodigo());
             return true;
@@ -329,33 +1057,73 @@ public class RepositorioCitasMongo {
         }
     }
     
+    /**
+     * Verifica si dos versiones de una cita solo pueden diferir en el estado
+     */
+    private static boolean mismosDatos(Cita anterior, Cita cita) {
+        return Objects.equals(anterior.getServicio(), cita.getServicio())
+            && Objects.equals(anterior.getPersonal(), cita.getPersonal())
+            && Objects.equals(anterior.getFecha(), cita.getFecha())
+            && Objects.equals(anterior.getHora(), cita.getHora())
+            && Objects.equals(anterior.getMotivo(), cita.getMotivo());
+    }
+    
+    /**
+     * Actualiza una cita del archivo
+     * Si vuelve a PENDIENTE se inserta en las vigentes (el índice de horarios
+     * la rechaza si el horario ya está ocupado) y se quita del archivo
+     *
+     * @return La cita antes del cambio, o null si no está archivada o no pudo volver
+     */
+    private Cita actualizarArchivada(Cita cita, Bson filtro, Bson actualizacion) {
+        if (cita.getEstado() != Cita.EstadoCita.PENDIENTE) {
+            return coleccionArchivo.findOneAndUpdate(filtro, actualizacion,
+                new FindOneAndUpdateOptions().returnDocument(ReturnDocument.BEFORE));
+        }
+        
+        Cita anterior = coleccionArchivo.find(filtro).first();
+        if (anterior == null) {
+            return null;
+        }
+        try {
+            coleccionCitas.insertOne(cita);
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                System.err.println("⚠️ El horario ya está ocupado");
+                return null;
+            }
+            throw e;
+        }
+        coleccionArchivo.deleteOne(filtro);
+        return anterior;
+    }
+    
     /**
      * Cancela una cita por código
+     * La condición (PENDIENTE y más de 2 horas de anticipación) la evalúa el
+     * servidor en el mismo findOneAndUpdate que cambia el estado: una sola
+     * operación, sin carrera con otra cancelación o cambio de estado
      * 
      * @param codigo Código de la cita a cancelar
-     * @return true si se canceló exitosamente
+     * @return true si se canceló; false si no existe o ya no puede cancelarse
      */
     public boolean cancelarCita(String codigo) {
         try {
-            Cita cita = buscarPorCodigo(codigo);
+            Cita cancelada = coleccionCitas.findOneAndUpdate(
+                and(eq("codigo", codigo), filtroCancelables(LocalDateTime.now())),
+                Updates.set("estado", Cita.EstadoCita.CANCELADA.name()),
+                new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
             
-            if (cita == null) {
-                System.err.println("⚠️ Cita no encontrada: " + codigo);
-                return false;
-            }
-            
-            if (!cita.puedeCancelar()) {
-                System.err.println("⚠️ La cita no puede ser cancelada");
+            if (cancelada == null) {
+                System.err.println("⚠️ La cita " + codigo + " no existe o no puede ser cancelada");
                 return false;
             }
             
-            boolean cancelado = cita.cancelar();
+            ajustarContadores(Cita.EstadoCita.PENDIENTE, Cita.EstadoCita.CANCELADA);
+            eventos.publicar(EventoCita.estadoCambiado(cancelada, Cita.EstadoCita.PENDIENTE));
             
-            if (cancelado) {
-                return actualizarCita(cita);
-            }
-            
-            return false;
+            System.out.println("✅ Cita cancelada: " + codigo);
+            return true;
             
         } catch (Exception e) {
             System.err.println("❌ Error al cancelar cita: " + e.getMessage());
@@ -363,6 +1131,207 @@ public class RepositorioCitasMongo {
         }
     }
     
+    // ==================== ESCRITURAS POR LOTES ====================
+    
+    /**
+     * Encola el alta de una cita; se inserta junto con las demás escrituras
+     * encoladas en un solo bulkWrite (por tamaño de lote o cada 50 ms)
+     * Pensado para importaciones y otras altas masivas
+     * 
+     * @return true cuando la cita quede guardada; false si es inválida, su
+     *         código ya existe o su horario está ocupado
+     */
+    public CompletableFuture<Boolean> encolarAlta(Cita cita) {
+        List<Cita> lote = new ArrayList<>();
+        lote.add(cita);
+        if (ResultadoLote.prevalidar(lote)[0] != null
+                || (!horariosProtegidos && estaOcupado(cita.getPersonal(), cita.getFecha(), cita.getHora()))) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return escrituras.encolar(OperacionCita.alta(cita));
+    }
+    
+    /**
+     * Encola el cambio de estado de una cita PENDIENTE (cancelación, atendida
+     * o no asistió); se aplica junto con las demás escrituras encoladas
+     * Una cancelación solo se aplica con más de 2 horas de anticipación
+     * 
+     * @return true cuando la cita quede en el nuevo estado
+     */
+    public CompletableFuture<Boolean> encolarCambioEstado(String codigo, Cita.EstadoCita nuevoEstado) {
+        if (nuevoEstado == null || nuevoEstado == Cita.EstadoCita.PENDIENTE) {
+            throw new IllegalArgumentException("Estado de destino inválido: " + nuevoEstado);
+        }
+        return escrituras.encolar(OperacionCita.cambioEstado(codigo, nuevoEstado));
+    }
+    
+    /**
+     * Cambia el estado de muchas citas pendientes con escrituras por lotes
+     * (cancelaciones masivas, cierre del día)
+     * 
+     * @return Resultado por código, en el orden recibido
+     */
+    public Map<String, Boolean> cambiarEstados(List<String> codigos, Cita.EstadoCita nuevoEstado) {
+        Map<String, CompletableFuture<Boolean>> pendientes = new LinkedHashMap<>();
+        for (String codigo : codigos) {
+            pendientes.put(codigo, encolarCambioEstado(codigo, nuevoEstado));
+        }
+        vaciarEscrituras();
+        
+        Map<String, Boolean> resultados = new LinkedHashMap<>();
+        pendientes.forEach((codigo, resultado) -> resultados.put(codigo,
+            !resultado.isCompletedExceptionally() && resultado.getNow(false)));
+        System.out.println("✅ Estados cambiados a " + nuevoEstado + ": "
+            + resultados.values().stream().filter(Boolean::booleanValue).count() + " de " + codigos.size());
+        return resultados;
+    }
+    
+    /**
+     * Envía ya las escrituras encoladas y espera a que terminen
+     */
+    public void vaciarEscrituras() {
+        escrituras.vaciar();
+    }
+    
+    /**
+     * Escribe un lote de la cola por rondas, en el orden en que se encoló: una
+     * ronda termina donde se repite un código, así que las operaciones sobre
+     * una misma cita se aplican en orden. En cada ronda las altas van en un
+     * bulkWrite y los cambios en uno por estado de destino, todos sin orden
+     * (son citas distintas). Si un grupo falla, solo sus operaciones fallan.
+     */
+    private boolean[] escribirOperaciones(List<OperacionCita> operaciones, RuntimeException[] errores) {
+        boolean[] aplicadas = new boolean[operaciones.size()];
+        int inicio = 0;
+        while (inicio < operaciones.size()) {
+            Set<String> codigos = new HashSet<>();
+            List<Integer> altas = new ArrayList<>();
+            Map<Cita.EstadoCita, List<Integer>> cambios = new EnumMap<>(Cita.EstadoCita.class);
+            int fin = inicio;
+            while (fin < operaciones.size() && codigos.add(operaciones.get(fin).codigo)) {
+                OperacionCita operacion = operaciones.get(fin);
+                if (operacion.cita != null) {
+                    altas.add(fin);
+                } else {
+                    cambios.computeIfAbsent(operacion.nuevoEstado, estado -> new ArrayList<>()).add(fin);
+                }
+                fin++;
+            }
+            
+            if (!altas.isEmpty()) {
+                escribirGrupo(altas, errores, () -> escribirAltas(operaciones, altas, aplicadas));
+            }
+            cambios.forEach((estado, posiciones) -> escribirGrupo(posiciones, errores,
+                () -> escribirCambios(operaciones, estado, posiciones, aplicadas)));
+            inicio = fin;
+        }
+        return aplicadas;
+    }
+    
+    /**
+     * Ejecuta la escritura de un grupo; si falla, marca el error en sus operaciones
+     */
+    private static void escribirGrupo(List<Integer> posiciones, RuntimeException[] errores, Runnable escritura) {
+        try {
+            escritura.run();
+        } catch (RuntimeException e) {
+            System.err.println("❌ Error al escribir " + posiciones.size() + " operaciones del lote: " + e.getMessage());
+            posiciones.forEach(posicion -> errores[posicion] = e);
+        }
+    }
+    
+    private void escribirAltas(List<OperacionCita> operaciones, List<Integer> posiciones, boolean[] aplicadas) {
+        List<InsertOneModel<Cita>> modelos = posiciones.stream()
+            .map(posicion -> new InsertOneModel<>(operaciones.get(posicion).cita))
+            .collect(Collectors.toList());
+        posiciones.forEach(posicion -> aplicadas[posicion] = true);
+        
+        try {
+            coleccionCitas.bulkWrite(modelos, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // Los índices únicos rechazan códigos repetidos y horarios ocupados
+            for (BulkWriteError error : e.getWriteErrors()) {
+                aplicadas[posiciones.get(error.getIndex())] = false;
+            }
+            System.err.println("⚠️ Altas rechazadas en el lote: " + e.getWriteErrors().size());
+        }
+        
+        Map<Cita.EstadoCita, Long> altas = new EnumMap<>(Cita.EstadoCita.class);
+        for (int posicion : posiciones) {
+            if (aplicadas[posicion]) {
+                altas.merge(operaciones.get(posicion).cita.getEstado(), 1L, Long::sum);
+            }
+        }
+        altas.forEach(this::incrementarContador);
+        
+        for (int posicion : posiciones) {
+            if (aplicadas[posicion]) {
+                eventos.publicar(EventoCita.creada(operaciones.get(posicion).cita));
+            }
+        }
+    }
+    
+    private void escribirCambios(List<OperacionCita> operaciones, Cita.EstadoCita estado,
+                                 List<Integer> posiciones, boolean[] aplicadas) {
+        Bson condicion = estado == Cita.EstadoCita.CANCELADA
+            ? filtroCancelables(LocalDateTime.now())
+            : eq("estado", Cita.EstadoCita.PENDIENTE.name());
+        // Marca de este bulkWrite: solo la llevan los documentos que él cambió
+        ObjectId marca = new ObjectId();
+        List<UpdateOneModel<Cita>> modelos = posiciones.stream()
+            .map(posicion -> new UpdateOneModel<Cita>(
+                and(eq("codigo", operaciones.get(posicion).codigo), condicion),
+                Updates.combine(Updates.set("estado", estado.name()), Updates.set(CAMPO_MARCA_LOTE, marca))))
+            .collect(Collectors.toList());
+        
+        BulkWriteResult resultado = coleccionCitas.bulkWrite(modelos, new BulkWriteOptions().ordered(false));
+        int modificadas = resultado.getModifiedCount();
+        if (modificadas > 0) {
+            ajustarContadores(Cita.EstadoCita.PENDIENTE, estado, modificadas);
+        }
+        
+        // El resultado del bulkWrite es global: si no se aplicaron todas, o hay
+        // oyentes, una lectura por la marca indica cuáles cambió este lote (una
+        // cita que ya estaba en el nuevo estado no la lleva)
+        if (modificadas == modelos.size() && !eventos.hayOyentes()) {
+            posiciones.forEach(posicion -> aplicadas[posicion] = true);
+            return;
+        }
+        Set<String> codigos = posiciones.stream()
+            .map(posicion -> operaciones.get(posicion).codigo)
+            .collect(Collectors.toSet());
+        Map<String, Cita> cambiadas = new HashMap<>();
+        coleccionCitas.find(and(in("codigo", codigos), eq(CAMPO_MARCA_LOTE, marca)))
+            .forEach(cita -> cambiadas.put(cita.getCodigo(), cita));
+        for (int posicion : posiciones) {
+            aplicadas[posicion] = cambiadas.containsKey(operaciones.get(posicion).codigo);
+        }
+        cambiadas.values().forEach(cita -> eventos.publicar(EventoCita.estadoCambiado(cita, Cita.EstadoCita.PENDIENTE)));
+    }
+    
+    /**
+     * Escritura encolada: alta de una cita o cambio de estado por código
+     */
+    private static final class OperacionCita {
+        final Cita cita;
+        final String codigo;
+        final Cita.EstadoCita nuevoEstado;
+        
+        private OperacionCita(Cita cita, String codigo, Cita.EstadoCita nuevoEstado) {
+            this.cita = cita;
+            this.codigo = codigo;
+            this.nuevoEstado = nuevoEstado;
+        }
+        
+        static OperacionCita alta(Cita cita) {
+            return new OperacionCita(cita, cita.getCodigo(), null);
+        }
+        
+        static OperacionCita cambioEstado(String codigo, Cita.EstadoCita nuevoEstado) {
+            return new OperacionCita(null, codigo, nuevoEstado);
+        }
+    }
+    
     // ==================== DELETE ====================
     
     /**
@@ -378,9 +1347,15 @@ public class RepositorioCitasMongo {
             }
             
             Bson filtro = eq("codigo", codigo);
-            boolean resultado = coleccionCitas.deleteOne(filtro).getDeletedCount() > 0;
+            Cita eliminada = coleccionCitas.findOneAndDelete(filtro);
+            if (eliminada == null) {
+                eliminada = coleccionArchivo.findOneAndDelete(filtro);
+            }
+            boolean resultado = eliminada != null;
             
             if (resultado) {
+                incrementarContador(eliminada.getEstado(), -1);
+                eventos.publicar(EventoCita.eliminada(eliminada));
                 System.out.println("✅ Cita eliminada: " + codigo);
             } else {
                 System.err.println("⚠️ No se encontró la cita: " + codigo);
@@ -397,12 +1372,16 @@ public class RepositorioCitasMongo {
     /**
      * Elimina todas las citas de la colección
      * CUIDADO: Esta operación es irreversible
+     * No publica un evento por cita: una caché delante de este repositorio
+     * debe vaciarse después (RepositorioCitasCache.invalidarTodo())
      * 
      * @return true si se eliminaron todas las citas
      */
     public boolean eliminarTodas() {
         try {
             coleccionCitas.deleteMany(new org.bson.Document());
+            coleccionArchivo.deleteMany(new org.bson.Document());
+            recalcularContadores();
             System.out.println("⚠️ Todas las citas han sido eliminadas");
             return true;
         } catch (Exception e) {
@@ -411,36 +1390,219 @@ public class RepositorioCitasMongo {
         }
     }
     
-    // ==================== MÉTODOS DE CONVERSIÓN ====================
+    // ==================== ARCHIVO ====================
+    
+    /**
+     * Mueve a la colección de archivo las citas finalizadas (no PENDIENTES)
+     * con fecha anterior a "antesDe", por lotes de TAMANO_LOTE
+     *
+     * Cada lote se copia al archivo (reemplazando una copia anterior de un
+     * archivado interrumpido) y solo se borran de las vigentes las citas que
+     * no cambiaron desde que se leyeron. Si una cita cambió entre la lectura y
+     * el borrado, la vigente manda: su copia se quita del archivo y la cita se
+     * vuelve a considerar en el próximo archivado si sigue cumpliendo el filtro.
+     * Los lotes avanzan por código, así que cada cita se lee una sola vez por
+     * llamada (una que nunca coincida con lo leído no se repite para siempre).
+     * Se puede repetir sin riesgo.
+     *
+     * @return Número de citas archivadas
+     */
+    public int archivarFinalizadas(LocalDate antesDe) {
+        Bson filtro = and(
+            ne("estado", Cita.EstadoCita.PENDIENTE.name()),
+            lt("fecha", CodecCita.valorFecha(antesDe))
+        );
+        
+        int archivadas = 0;
+        try {
+            String ultimo = null;
+            while (true) {
+                List<Cita> lote = coleccionCitas.find(ultimo == null ? filtro : and(filtro, gt("codigo", ultimo)))
+                    .sort(ascending("codigo"))
+                    .limit(TAMANO_LOTE)
+                    .into(new ArrayList<>());
+                if (lote.isEmpty()) {
+                    break;
+                }
+                ultimo = lote.get(lote.size() - 1).getCodigo();
+                
+                coleccionArchivo.bulkWrite(lote.stream()
+                    .map(cita -> new ReplaceOneModel<>(eq("codigo", cita.getCodigo()), cita,
+                        new ReplaceOptions().upsert(true)))
+                    .collect(Collectors.toList()), new BulkWriteOptions().ordered(false));
+                
+                int borradas = coleccionCitas.bulkWrite(lote.stream()
+                    .map(cita -> new DeleteOneModel<Cita>(mismaVersion(cita)))
+                    .collect(Collectors.toList()), new BulkWriteOptions().ordered(false)).getDeletedCount();
+                
+                if (borradas < lote.size()) {
+                    // Las que siguen vigentes cambiaron en el intervalo: su copia archivada es vieja
+                    List<String> codigos = lote.stream().map(Cita::getCodigo).collect(Collectors.toList());
+                    List<String> cambiadas = new ArrayList<>();
+                    coleccionCitas.find(in("codigo", codigos))
+                        .projection(Projections.include("codigo"))
+                        .forEach(cita -> cambiadas.add(cita.getCodigo()));
+                    if (!cambiadas.isEmpty()) {
+                        coleccionArchivo.deleteMany(in("codigo", cambiadas));
+                    }
+                }
+                archivadas += borradas;
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Error al archivar citas: " + e.getMessage());
+        }
+        
+        if (archivadas > 0) {
+            System.out.println("🗄️ Citas archivadas: " + archivadas);
+        }
+        return archivadas;
+    }
+    
+    /**
+     * Filtro del documento vigente tal como se leyó (mismo código, estado,
+     * personal, servicio, fecha, hora y motivo)
+     */
+    private static Bson mismaVersion(Cita cita) {
+        return and(
+            eq("codigo", cita.getCodigo()),
+            eq("estado", cita.getEstado().name()),
+            eq("personal", cita.getPersonal()),
+            eq("servicio", cita.getServicio()),
+            eq("fecha", CodecCita.valorFecha(cita.getFecha())),
+            cita.getHora() != null ? eq("hora", CodecCita.valorHora(cita.getHora())) : eq("hora", null),
+            eq("motivo", cita.getMotivo())
+        );
+    }
+    
+    /**
+     * Archiva en segundo plano ahora y luego una vez al día
+     * Lo llama la aplicación al arrancar; las pruebas y otros usos del
+     * repositorio no archivan salvo que lo pidan. Llamarlo de nuevo no
+     * programa un segundo archivado.
+     */
+    public synchronized void iniciarArchivadoDiario() {
+        if (archivador != null) {
+            return;
+        }
+        archivador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "archivo-citas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        archivador.scheduleWithFixedDelay(() -> archivarFinalizadas(LocalDate.now()), 0, 1, TimeUnit.DAYS);
+    }
+    
+    /**
+     * Detiene el archivado diario (un archivado en curso termina igual)
+     */
+    public synchronized void detenerArchivadoDiario() {
+        if (archivador != null) {
+            archivador.shutdown();
+            archivador = null;
+        }
+    }
+    
+    // ==================== EVENTOS ====================
+    
+    /**
+     * Registra un oyente de altas, cancelaciones y cambios de estado
+     * Solo recibe las escrituras hechas desde esta aplicación
+     */
+    public void agregarOyente(OyenteCitas oyente) {
+        eventos.agregar(oyente);
+    }
+    
+    public void quitarOyente(OyenteCitas oyente) {
+        eventos.quitar(oyente);
+    }
+    
+    // ==================== CONTADORES POR ESTADO ====================
+    
+    /**
+     * Suma un valor al contador de un estado
+     */
+    private void incrementarContador(Cita.EstadoCita estado, long valor) {
+        try {
+            coleccionEstadisticas.updateOne(eq("_id", ID_CONTADORES),
+                Updates.combine(Updates.inc(estado.name(), valor), Updates.inc(CAMPO_VERSION, 1L)),
+                new UpdateOptions().upsert(true));
+        } catch (Exception e) {
+            marcarContadoresDesincronizados(e);
+        }
+    }
+    
+    /**
+     * Mueve una cita de un contador a otro en una sola actualización
+     */
+    private void ajustarContadores(Cita.EstadoCita anterior, Cita.EstadoCita nuevo) {
+        ajustarContadores(anterior, nuevo, 1);
+    }
+    
+    private void ajustarContadores(Cita.EstadoCita anterior, Cita.EstadoCita nuevo, long cantidad) {
+        try {
+            coleccionEstadisticas.updateOne(eq("_id", ID_CONTADORES),
+                Updates.combine(Updates.inc(anterior.name(), -cantidad), Updates.inc(nuevo.name(), cantidad),
+                                Updates.inc(CAMPO_VERSION, 1L)),
+                new UpdateOptions().upsert(true));
+        } catch (Exception e) {
+            marcarContadoresDesincronizados(e);
+        }
+    }
     
     /**
-     * Convierte una Cita a CitaDTO para MongoDB
+     * Registra que un contador no se pudo actualizar: esta instancia los
+     * reconstruye en la próxima lectura y, si el documento se puede marcar,
+     * también el próximo arranque de cualquier instancia
      */
-    private CitaDTO convertirACitaDTO(Cita cita) {
-        CitaDTO dto = new CitaDTO();
-        dto.setCodigo(cita.getCodigo());
-        dto.setServicio(cita.getServicio());
-        dto.setPersonal(cita.getPersonal());
-        dto.setFecha(cita.getFecha().toString());
-        dto.setHora(cita.getHora().toString());
-        dto.setMotivo(cita.getMotivo());
-        dto.setEstado(cita.getEstado().name());
-        dto.setFechaCreacion(cita.getFechaCreacion().toString());
-        return dto;
+    private void marcarContadoresDesincronizados(Exception causa) {
+        contadoresDesincronizados = true;
+        System.err.println("❌ Error al actualizar contadores: " + causa.getMessage());
+        try {
+            coleccionEstadisticas.updateOne(eq("_id", ID_CONTADORES),
+                Updates.set(CAMPO_DESINCRONIZADOS, true),
+                new UpdateOptions().upsert(true));
+        } catch (Exception e) {
+            // Se marcó al menos en esta instancia
+        }
     }
     
+    // ==================== MIGRACIÓN ====================
+    
     /**
-     * Convierte un CitaDTO de MongoDB a Cita
+     * Convierte en el servidor los documentos antiguos (fecha, hora y
+     * fechaCreacion como texto ISO) al formato de CodecCita, con un solo
+     * updateMany por colección. Si ya no quedan documentos antiguos la
+     * consulta usa el índice {fecha, hora} y no modifica nada.
      */
-    private Cita convertirACita(CitaDTO dto) {
-        Cita cita = new Cita();
-        cita.setCodigo(dto.getCodigo());
-        cita.setServicio(dto.getServicio());
-        cita.setPersonal(dto.getPersonal());
-        cita.setFecha(LocalDate.parse(dto.getFecha()));
-        cita.setHora(LocalTime.parse(dto.getHora()));
-        cita.setMotivo(dto.getMotivo());
-        cita.setEstado(Cita.EstadoCita.valueOf(dto.getEstado()));
-        return cita;
+    private void migrarDocumentosAntiguos(MongoCollection<Cita> coleccion) {
+        try {
+            Document fecha = new Document("$dateFromString", new Document("dateString", "$fecha")
+                .append("format", "%Y-%m-%d")
+                .append("timezone", "UTC"));
+            Document hora = new Document("$cond", Arrays.asList(
+                new Document("$eq", Arrays.asList(new Document("$type", "$hora"), "string")),
+                new Document("$add", Arrays.asList(
+                    new Document("$multiply", Arrays.asList(
+                        new Document("$toInt", new Document("$substrCP", Arrays.asList("$hora", 0, 2))), 60)),
+                    new Document("$toInt", new Document("$substrCP", Arrays.asList("$hora", 3, 2))))),
+                "$hora"));
+            // Una fechaCreacion que no se pueda convertir queda como texto (CodecCita la sigue leyendo)
+            Document fechaCreacion = new Document("$dateFromString", new Document("dateString", "$fechaCreacion")
+                .append("timezone", "UTC")
+                .append("onError", "$fechaCreacion"));
+            
+            long migrados = coleccion.updateMany(type("fecha", BsonType.STRING), Arrays.asList(
+                new Document("$set", new Document("fecha", fecha)
+                    .append("hora", hora)
+                    .append("fechaCreacion", fechaCreacion))
+            )).getModifiedCount();
+            
+            if (migrados > 0) {
+                System.out.println("🔄 Documentos migrados a fechas nativas en '"
+                    + coleccion.getNamespace().getCollectionName() + "': " + migrados);
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ No se pudieron migrar los documentos antiguos: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
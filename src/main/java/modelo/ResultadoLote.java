@@ -0,0 +1,144 @@
+package modelo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resultado de guardar un lote de citas (guardarLote)
+ * Indica, en el mismo orden del lote, si cada cita fue aceptada o por qué se rechazó
+ */
+public class ResultadoLote {
+    
+    /**
+     * Resultado de una cita del lote
+     */
+    public enum Motivo {
+        ACEPTADA("Cita guardada"),
+        CITA_INVALIDA("La cita no tiene los datos obligatorios"),
+        CODIGO_REPETIDO("Ya existe una cita con ese código"),
+        HORARIO_OCUPADO("El horario ya está ocupado"),
+        CONFLICTO_EN_LOTE("Otra cita del mismo lote ocupa ese horario"),
+        ERROR_ESCRITURA("No se pudo escribir la cita");
+        
+        private final String descripcion;
+        
+        Motivo(String descripcion) {
+            this.descripcion = descripcion;
+        }
+        
+        public String getDescripcion() {
+            return descripcion;
+        }
+    }
+    
+    /**
+     * Cita del lote con su resultado
+     */
+    public static final class Entrada {
+        private final Cita cita;
+        private final Motivo motivo;
+        
+        private Entrada(Cita cita, Motivo motivo) {
+            this.cita = cita;
+            this.motivo = motivo;
+        }
+        
+        public Cita getCita() {
+            return cita;
+        }
+        
+        public Motivo getMotivo() {
+            return motivo;
+        }
+        
+        public boolean isAceptada() {
+            return motivo == Motivo.ACEPTADA;
+        }
+    }
+    
+    private final List<Entrada> entradas;
+    private final int aceptadas;
+    
+    ResultadoLote(List<Cita> lote, Motivo[] motivos) {
+        List<Entrada> lista = new ArrayList<>(lote.size());
+        int cuenta = 0;
+        for (int i = 0; i < motivos.length; i++) {
+            lista.add(new Entrada(lote.get(i), motivos[i]));
+            if (motivos[i] == Motivo.ACEPTADA) {
+                cuenta++;
+            }
+        }
+        this.entradas = Collections.unmodifiableList(lista);
+        this.aceptadas = cuenta;
+    }
+    
+    /**
+     * Resultado de cada cita, en el orden del lote
+     */
+    public List<Entrada> getEntradas() {
+        return entradas;
+    }
+    
+    public List<Cita> getAceptadas() {
+        List<Cita> lista = new ArrayList<>(aceptadas);
+        for (Entrada entrada : entradas) {
+            if (entrada.isAceptada()) {
+                lista.add(entrada.cita);
+            }
+        }
+        return lista;
+    }
+    
+    public List<Entrada> getRechazadas() {
+        List<Entrada> lista = new ArrayList<>(entradas.size() - aceptadas);
+        for (Entrada entrada : entradas) {
+            if (!entrada.isAceptada()) {
+                lista.add(entrada);
+            }
+        }
+        return lista;
+    }
+    
+    public int contarAceptadas() {
+        return aceptadas;
+    }
+    
+    public int contarRechazadas() {
+        return entradas.size() - aceptadas;
+    }
+    
+    public boolean todasAceptadas() {
+        return aceptadas == entradas.size();
+    }
+    
+    /**
+     * Validación del lote consigo mismo, en una sola pasada: citas sin código
+     * o sin campos obligatorios, códigos repetidos dentro del lote y dos citas pendientes del mismo
+     * personal en el mismo horario (se acepta la primera)
+     *
+     * @return Un motivo de rechazo por cita, o null si falta validarla contra el repositorio
+     */
+    static Motivo[] prevalidar(List<Cita> lote) {
+        Motivo[] motivos = new Motivo[lote.size()];
+        Set<String> codigos = new HashSet<>();
+        Set<List<Object>> horarios = new HashSet<>();
+        for (int i = 0; i < motivos.length; i++) {
+            Cita cita = lote.get(i);
+            if (cita == null || cita.getCodigo() == null
+                    || !ValidadorCitas.validarCamposObligatorios(cita.getServicio(), cita.getPersonal(),
+                                                                 cita.getFecha(), cita.getHora())) {
+                motivos[i] = Motivo.CITA_INVALIDA;
+            } else if (!codigos.add(cita.getCodigo())) {
+                motivos[i] = Motivo.CODIGO_REPETIDO;
+            } else if (cita.getEstado() == Cita.EstadoCita.PENDIENTE && cita.getHora() != null
+                    && !horarios.add(Arrays.asList(cita.getPersonal(), cita.getFecha(), cita.getHora()))) {
+                motivos[i] = Motivo.CONFLICTO_EN_LOTE;
+            }
+        }
+        return motivos;
+    }
+}
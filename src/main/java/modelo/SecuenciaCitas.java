@@ -0,0 +1,192 @@
+package modelo;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Secuencia de citas de RepositorioCitas con lecturas por versiones
+ *
+ * Las citas en memoria se guardan en un arreglo de solo anexar: una versión es
+ * (arreglo, tamaño, segmentos compactos) y nunca cambia una vez publicada.
+ * Anexar escribe en una posición que ninguna versión anterior alcanza a ver,
+ * y crecer, compactar o vaciar crean un arreglo nuevo, así que un lector se
+ * queda con una vista consistente sin copiar nada mientras los escritores
+ * siguen trabajando.
+ *
+ * Las escrituras se serializan con el bloqueo de este objeto.
+ */
+final class SecuenciaCitas {
+    
+    private static final int CAPACIDAD_INICIAL = 16;
+    
+    private final Cita.ObservadorEstado observador;
+    private Cita[] elementos = new Cita[CAPACIDAD_INICIAL];
+    private volatile Version actual;
+    
+    SecuenciaCitas(Cita.ObservadorEstado observador) {
+        this.observador = observador;
+        this.actual = new Version(elementos, 0, Collections.emptyList());
+    }
+    
+    /**
+     * Versión vigente (lectura sin bloqueo)
+     */
+    Version actual() {
+        return actual;
+    }
+    
+    synchronized void agregar(Cita cita) {
+        Version version = actual;
+        if (version.tamano == elementos.length) {
+            elementos = Arrays.copyOf(elementos, elementos.length * 2);
+        }
+        elementos[version.tamano] = cita;
+        actual = new Version(elementos, version.tamano + 1, version.segmentos, version.inicios, version.enSegmentos);
+    }
+    
+    /**
+     * Publica un segmento compacto y, en la misma versión, quita de la
+     * secuencia las citas que contiene
+     */
+    synchronized void compactar(SegmentoCitasCompacto segmento, Predicate<Cita> incluida) {
+        Version version = actual;
+        Cita[] restantes = new Cita[Math.max(CAPACIDAD_INICIAL, version.tamano)];
+        int tamano = filtrar(version, incluida, restantes);
+        List<SegmentoCitasCompacto> segmentos = new ArrayList<>(version.segmentos);
+        segmentos.add(segmento);
+        
+        elementos = restantes;
+        actual = new Version(restantes, tamano, Collections.unmodifiableList(segmentos));
+    }
+    
+    /**
+     * Quita de la secuencia las citas indicadas (altas que no llegaron al diario)
+     */
+    synchronized void quitar(Predicate<Cita> quitada) {
+        Version version = actual;
+        Cita[] restantes = new Cita[Math.max(CAPACIDAD_INICIAL, version.tamano)];
+        int tamano = filtrar(version, quitada, restantes);
+        
+        elementos = restantes;
+        actual = new Version(restantes, tamano, version.segmentos, version.inicios, version.enSegmentos);
+    }
+    
+    /**
+     * Agrega un segmento sin tocar las citas en memoria (carga de instantáneas)
+     */
+    synchronized void agregarSegmento(SegmentoCitasCompacto segmento) {
+        compactar(segmento, cita -> false);
+    }
+    
+    synchronized void vaciar() {
+        elementos = new Cita[CAPACIDAD_INICIAL];
+        actual = new Version(elementos, 0, Collections.emptyList());
+    }
+    
+    /**
+     * Copia en destino las citas en memoria que no cumplen el criterio
+     *
+     * @return Cantidad de citas copiadas
+     */
+    private static int filtrar(Version version, Predicate<Cita> excluida, Cita[] destino) {
+        int tamano = 0;
+        for (int i = 0; i < version.tamano; i++) {
+            if (!excluida.test(version.elementos[i])) {
+                destino[tamano++] = version.elementos[i];
+            }
+        }
+        return tamano;
+    }
+    
+    private static int[] calcularInicios(List<SegmentoCitasCompacto> segmentos) {
+        int[] inicios = new int[segmentos.size()];
+        int posicion = 0;
+        for (int i = 0; i < inicios.length; i++) {
+            inicios[i] = posicion;
+            posicion += segmentos.get(i).tamano();
+        }
+        return inicios;
+    }
+    
+    /**
+     * Vista inmutable de la secuencia en un instante
+     */
+    final class Version {
+        private final Cita[] elementos;
+        private final int tamano;
+        private final List<SegmentoCitasCompacto> segmentos;
+        
+        // Primera fila de cada segmento contando solo las filas de los segmentos
+        // (se comparte entre versiones mientras los segmentos no cambian)
+        private final int[] inicios;
+        private final int enSegmentos;
+        private final int total;
+        
+        private Version(Cita[] elementos, int tamano, List<SegmentoCitasCompacto> segmentos) {
+            this(elementos, tamano, segmentos, calcularInicios(segmentos),
+                 segmentos.stream().mapToInt(SegmentoCitasCompacto::tamano).sum());
+        }
+        
+        private Version(Cita[] elementos, int tamano, List<SegmentoCitasCompacto> segmentos,
+                        int[] inicios, int enSegmentos) {
+            this.elementos = elementos;
+            this.tamano = tamano;
+            this.segmentos = segmentos;
+            this.inicios = inicios;
+            this.enSegmentos = enSegmentos;
+            this.total = tamano + enSegmentos;
+        }
+        
+        /**
+         * Citas en memoria (sin los segmentos), como vista de solo lectura
+         */
+        List<Cita> enMemoria() {
+            return Collections.unmodifiableList(Arrays.asList(elementos).subList(0, tamano));
+        }
+        
+        List<SegmentoCitasCompacto> segmentos() {
+            return segmentos;
+        }
+        
+        int total() {
+            return total;
+        }
+        
+        /**
+         * Todas las citas de la versión: las de memoria y, a continuación, las
+         * de los segmentos (creadas bajo demanda al acceder a ellas)
+         */
+        List<Cita> todas() {
+            if (segmentos.isEmpty()) {
+                return enMemoria();
+            }
+            return new AbstractList<Cita>() {
+                @Override
+                public Cita get(int indice) {
+                    if (indice < 0 || indice >= total) {
+                        throw new IndexOutOfBoundsException("Índice: " + indice + ", tamaño: " + total);
+                    }
+                    if (indice < tamano) {
+                        return elementos[indice];
+                    }
+                    // Las filas de los segmentos van después de las citas en memoria
+                    int fila = indice - tamano;
+                    int segmento = inicios.length - 1;
+                    while (inicios[segmento] > fila) {
+                        segmento--;
+                    }
+                    return segmentos.get(segmento).obtener(fila - inicios[segmento], observador);
+                }
+                
+                @Override
+                public int size() {
+                    return total;
+                }
+            };
+        }
+    }
+}
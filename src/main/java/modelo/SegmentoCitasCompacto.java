@@ -0,0 +1,339 @@
+package modelo;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Almacenamiento compacto (por columnas) de un lote de citas
+ *
+ * Cada cita ocupa unos pocos bytes en arreglos primitivos:
+ * - servicio y personal: identificadores del diccionario (int)
+ * - fecha y hora: minutos desde 1970-01-01T00:00 (int)
+ * - estado: ordinal de EstadoCita (byte)
+ * - código y motivo: bytes UTF-8 contiguos con sus límites
+ *
+ * Las filas se ordenan por fecha/hora al construir el segmento; una permutación
+ * ordenada por código permite buscar por código con búsqueda binaria.
+ * Los objetos Cita se crean bajo demanda; un cambio de estado sobre una de esas
+ * vistas se escribe de vuelta en el segmento. Las filas son citas finalizadas
+ * y no pueden volver a PENDIENTE: cada búsqueda crea otra vista y el índice de
+ * horarios depende de la identidad de la cita, así que una cancelación hecha
+ * con otra vista nunca liberaría el horario.
+ */
+final class SegmentoCitasCompacto {
+    
+    private static final VarHandle ESTADO = MethodHandles.arrayElementVarHandle(byte[].class);
+    private static final Cita.EstadoCita[] ESTADOS = Cita.EstadoCita.values();
+    private static final int MINUTOS_POR_DIA = 24 * 60;
+    
+    private final DiccionarioValores dimensiones;
+    private final int tamano;
+    private final int[] servicios;
+    private final int[] personal;
+    private final int[] minutos;
+    private final byte[] estados;
+    private final long[] creacion;
+    private final TextoCompacto codigos;
+    private final TextoCompacto motivos;
+    private final int[] ordenPorCodigo;
+    
+    private SegmentoCitasCompacto(List<Cita> citas, DiccionarioValores dimensiones) {
+        this.dimensiones = dimensiones;
+        this.tamano = citas.size();
+        this.servicios = new int[tamano];
+        this.personal = new int[tamano];
+        this.minutos = new int[tamano];
+        this.estados = new byte[tamano];
+        this.creacion = new long[tamano];
+        
+        String[] textosCodigo = new String[tamano];
+        String[] textosMotivo = new String[tamano];
+        for (int i = 0; i < tamano; i++) {
+            Cita cita = citas.get(i);
+            servicios[i] = dimensiones.identificador(cita.getServicio());
+            personal[i] = dimensiones.identificador(cita.getPersonal());
+            minutos[i] = aMinutos(cita.getFecha(), cita.getHora());
+            estados[i] = (byte) cita.getEstado().ordinal();
+            creacion[i] = cita.getFechaCreacion() != null
+                    ? cita.getFechaCreacion().toInstant(ZoneOffset.UTC).toEpochMilli()
+                    : Long.MIN_VALUE;
+            textosCodigo[i] = cita.getCodigo();
+            textosMotivo[i] = cita.getMotivo();
+        }
+        this.codigos = new TextoCompacto(textosCodigo);
+        this.motivos = new TextoCompacto(textosMotivo);
+        
+        Integer[] orden = new Integer[tamano];
+        for (int i = 0; i < tamano; i++) {
+            orden[i] = i;
+        }
+        Arrays.sort(orden, Comparator.comparing(i -> textosCodigo[i]));
+        this.ordenPorCodigo = new int[tamano];
+        for (int i = 0; i < tamano; i++) {
+            ordenPorCodigo[i] = orden[i];
+        }
+    }
+    
+    /**
+     * Construye un segmento con las citas indicadas (con fecha y hora)
+     */
+    static SegmentoCitasCompacto construir(List<Cita> citas, DiccionarioValores dimensiones) {
+        List<Cita> ordenadas = new ArrayList<>(citas);
+        ordenadas.sort(Comparator.comparing(Cita::getFecha)
+                                 .thenComparing(Cita::getHora)
+                                 .thenComparing(Cita::getCodigo));
+        return new SegmentoCitasCompacto(ordenadas, dimensiones);
+    }
+    
+    int tamano() {
+        return tamano;
+    }
+    
+    /**
+     * Crea la vista Cita de una fila
+     *
+     * @param siguiente Observador a notificar después de actualizar el segmento
+     *                  (si rechaza el cambio, el segmento vuelve al estado anterior)
+     */
+    Cita obtener(int fila, Cita.ObservadorEstado siguiente) {
+        Cita cita = new Cita();
+        cita.setCodigo(codigos.obtener(fila));
+        cita.setServicio(dimensiones.valor(servicios[fila]));
+        cita.setPersonal(dimensiones.valor(personal[fila]));
+        cita.setFecha(LocalDate.ofEpochDay(Math.floorDiv(minutos[fila], MINUTOS_POR_DIA)));
+        cita.setHora(LocalTime.ofSecondOfDay(Math.floorMod(minutos[fila], MINUTOS_POR_DIA) * 60L));
+        cita.setMotivo(motivos.obtener(fila));
+        cita.setEstado(ESTADOS[(byte) ESTADO.getVolatile(estados, fila)]);
+        if (creacion[fila] != Long.MIN_VALUE) {
+            cita.setFechaCreacion(LocalDateTime.ofInstant(Instant.ofEpochMilli(creacion[fila]), ZoneOffset.UTC));
+        }
+        
+        cita.setObservador((vista, anterior) -> {
+            if (vista.getEstado() == Cita.EstadoCita.PENDIENTE) {
+                return false;
+            }
+            ESTADO.setVolatile(estados, fila, (byte) vista.getEstado().ordinal());
+            if (siguiente != null && !siguiente.estadoCambiado(vista, anterior)) {
+                ESTADO.setVolatile(estados, fila, (byte) anterior.ordinal());
+                return false;
+            }
+            return true;
+        });
+        return cita;
+    }
+    
+    /**
+     * Busca una cita por código (búsqueda binaria sobre la permutación por código)
+     */
+    Cita buscarPorCodigo(String codigo, Cita.ObservadorEstado siguiente) {
+        int fila = filaDeCodigo(codigo);
+        return fila < 0 ? null : obtener(fila, siguiente);
+    }
+    
+    boolean contieneCodigo(String codigo) {
+        return filaDeCodigo(codigo) >= 0;
+    }
+    
+    /**
+     * Obtiene las citas entre dos fechas (ambas inclusive), ordenadas por fecha y hora
+     */
+    List<Cita> obtenerPorRango(LocalDate desde, LocalDate hasta, Cita.ObservadorEstado siguiente) {
+        int inicio = primeraFilaDesde(aMinutos(desde, LocalTime.MIN));
+        int fin = primeraFilaDesde(aMinutos(hasta.plusDays(1), LocalTime.MIN));
+        List<Cita> citas = new ArrayList<>(fin - inicio);
+        for (int fila = inicio; fila < fin; fila++) {
+            citas.add(obtener(fila, siguiente));
+        }
+        return citas;
+    }
+    
+    /**
+     * Obtiene las citas de un personal comparando identificadores del diccionario
+     */
+    List<Cita> obtenerPorPersonal(String nombre, Cita.ObservadorEstado siguiente) {
+        List<Cita> citas = new ArrayList<>();
+        int id = dimensiones.buscar(nombre);
+        for (int fila = 0; fila < tamano; fila++) {
+            if (personal[fila] == id) {
+                citas.add(obtener(fila, siguiente));
+            }
+        }
+        return citas;
+    }
+    
+    /**
+     * Obtiene las citas de un servicio, opcionalmente entre dos fechas
+     * (búsqueda binaria del tramo de fechas y comparación de identificadores)
+     *
+     * @param desde Fecha inicial, o null para todo el segmento
+     * @param hasta Fecha final (inclusive), o null para todo el segmento
+     */
+    List<Cita> obtenerPorServicio(String nombre, LocalDate desde, LocalDate hasta,
+                                  Cita.ObservadorEstado siguiente) {
+        List<Cita> citas = new ArrayList<>();
+        int id = dimensiones.buscar(nombre);
+        int inicio = desde != null ? primeraFilaDesde(aMinutos(desde, LocalTime.MIN)) : 0;
+        int fin = hasta != null ? primeraFilaDesde(aMinutos(hasta.plusDays(1), LocalTime.MIN)) : tamano;
+        for (int fila = inicio; fila < fin; fila++) {
+            if (servicios[fila] == id) {
+                citas.add(obtener(fila, siguiente));
+            }
+        }
+        return citas;
+    }
+    
+    /**
+     * Recorre las citas de un personal sin materializar una lista
+     */
+    Stream<Cita> streamPorPersonal(String nombre, Cita.ObservadorEstado siguiente) {
+        int id = dimensiones.buscar(nombre);
+        return IntStream.range(0, tamano)
+                        .filter(fila -> personal[fila] == id)
+                        .mapToObj(fila -> obtener(fila, siguiente));
+    }
+    
+    /**
+     * Recorre en orden (fecha, hora, código) las citas posteriores a una posición
+     *
+     * @param posicion Última cita ya leída, o null para empezar desde el principio
+     */
+    Iterator<Cita> iterarDespues(PaginaCitas.Posicion posicion, Cita.ObservadorEstado siguiente) {
+        // Las filas siempre tienen fecha y hora: van después de una posición sin ellas
+        int inicio = posicion == null || posicion.fecha == null ? 0
+                : primeraFilaDesde(aMinutos(posicion.fecha, posicion.hora != null ? posicion.hora : LocalTime.MIN));
+        return new Iterator<Cita>() {
+            private int fila = inicio;
+            private Cita proxima = avanzar();
+            
+            private Cita avanzar() {
+                while (fila < tamano) {
+                    Cita cita = obtener(fila++, siguiente);
+                    // Las filas del mismo minuto que la posición pueden ser anteriores a ella
+                    if (posicion == null || posicion.esAnteriorA(cita)) {
+                        return cita;
+                    }
+                }
+                return null;
+            }
+            
+            @Override
+            public boolean hasNext() {
+                return proxima != null;
+            }
+            
+            @Override
+            public Cita next() {
+                if (proxima == null) {
+                    throw new NoSuchElementException();
+                }
+                Cita actual = proxima;
+                proxima = avanzar();
+                return actual;
+            }
+        };
+    }
+    
+    List<Cita> obtenerTodas(Cita.ObservadorEstado siguiente) {
+        List<Cita> citas = new ArrayList<>(tamano);
+        for (int fila = 0; fila < tamano; fila++) {
+            citas.add(obtener(fila, siguiente));
+        }
+        return citas;
+    }
+    
+    private int filaDeCodigo(String codigo) {
+        if (codigo == null) {
+            return -1;
+        }
+        int bajo = 0;
+        int alto = tamano - 1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            int comparacion = codigos.obtener(ordenPorCodigo[medio]).compareTo(codigo);
+            if (comparacion < 0) {
+                bajo = medio + 1;
+            } else if (comparacion > 0) {
+                alto = medio - 1;
+            } else {
+                return ordenPorCodigo[medio];
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Primera fila cuyo instante es mayor o igual al indicado
+     */
+    private int primeraFilaDesde(int minuto) {
+        int bajo = 0;
+        int alto = tamano;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (minutos[medio] < minuto) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+    
+    /**
+     * Fecha y hora en minutos desde la época (precisión de minutos, como los horarios de la agenda)
+     */
+    static int aMinutos(LocalDate fecha, LocalTime hora) {
+        return Math.toIntExact(fecha.toEpochDay() * MINUTOS_POR_DIA + hora.getHour() * 60 + hora.getMinute());
+    }
+    
+    /**
+     * Textos almacenados como bytes UTF-8 contiguos
+     */
+    private static final class TextoCompacto {
+        private final byte[] datos;
+        private final int[] limites;
+        private final BitSet nulos;
+        
+        TextoCompacto(String[] textos) {
+            this.limites = new int[textos.length + 1];
+            this.nulos = new BitSet(textos.length);
+            byte[][] codificados = new byte[textos.length][];
+            int total = 0;
+            for (int i = 0; i < textos.length; i++) {
+                if (textos[i] == null) {
+                    nulos.set(i);
+                    codificados[i] = new byte[0];
+                } else {
+                    codificados[i] = textos[i].getBytes(StandardCharsets.UTF_8);
+                }
+                total += codificados[i].length;
+                limites[i + 1] = total;
+            }
+            this.datos = new byte[total];
+            for (int i = 0; i < textos.length; i++) {
+                System.arraycopy(codificados[i], 0, datos, limites[i], codificados[i].length);
+            }
+        }
+        
+        String obtener(int fila) {
+            if (nulos.get(fila)) {
+                return null;
+            }
+            return new String(datos, limites[fila], limites[fila + 1] - limites[fila], StandardCharsets.UTF_8);
+        }
+    }
+}
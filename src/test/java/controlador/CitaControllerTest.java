@@ -1,6 +1,7 @@
 package controlador;
 
 import modelo.Cita;
+import modelo.RepositorioCitasCache;
 import modelo.RepositorioCitasMongo;
 import org.junit.jupiter.api.*;
 import java.time.LocalDate;
@@ -24,6 +25,8 @@ class CitaControllerTest {
         controller = new CitaController();
         repositorio = RepositorioCitasMongo.obtenerInstancia();
         repositorio.eliminarTodas();
+        // El controlador lee a través de la caché compartida
+        RepositorioCitasCache.obtenerInstancia().invalidarTodo();
         System.out.println("\n🧹 Base de datos limpiada para el test\n");
     }
     
@@ -239,6 +242,7 @@ class CitaControllerTest {
     void tearDown() {
         if (repositorio != null) {
             repositorio.eliminarTodas();
+            RepositorioCitasCache.obtenerInstancia().invalidarTodo();
             System.out.println("🧹 Base de datos limpiada después del test\n");
         }
     }
@@ -4,6 +4,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -35,7 +40,7 @@ class CitaTest {
     void constructor_debe_generar_codigo_unico() {
         assertNotNull(cita.getCodigo());
         assertTrue(cita.getCodigo().startsWith("CITA-"));
-        assertEquals(13, cita.getCodigo().length());
+        assertEquals(GeneradorCodigosTemporal.LONGITUD, cita.getCodigo().length());
     }
     
     @Test
@@ -192,4 +197,53 @@ class CitaTest {
         
         assertNotEquals(cita1.getCodigo(), cita2.getCodigo());
     }
-}
\ No newline at end of file
+    
+    @Test
+    void codigos_generados_en_paralelo_no_deben_repetirse() throws Exception {
+        GeneradorCodigosTemporal generador = new GeneradorCodigosTemporal(7);
+        Set<String> codigos = ConcurrentHashMap.newKeySet();
+        ExecutorService hilos = Executors.newFixedThreadPool(8);
+        for (int h = 0; h < 8; h++) {
+            hilos.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    codigos.add(generador.generar());
+                }
+            });
+        }
+        hilos.shutdown();
+        assertTrue(hilos.awaitTermination(30, TimeUnit.SECONDS));
+        
+        assertEquals(160_000, codigos.size());
+    }
+    
+    @Test
+    void nodo_por_defecto_debe_ser_estable_o_el_configurado() {
+        assertEquals(GeneradorCodigosTemporal.nodoDeEquipo("consultorio-1"),
+                     GeneradorCodigosTemporal.nodoDeEquipo("CONSULTORIO-1"));
+        assertEquals(0, GeneradorCodigosTemporal.nodoDeEquipo(null));
+        
+        String anterior = System.setProperty(GeneradorCodigosTemporal.PROPIEDAD_NODO, "12");
+        try {
+            assertEquals(12, GeneradorCodigosTemporal.nodoPorDefecto());
+            System.setProperty(GeneradorCodigosTemporal.PROPIEDAD_NODO, "doce");
+            assertThrows(IllegalArgumentException.class, GeneradorCodigosTemporal::nodoPorDefecto);
+        } finally {
+            if (anterior == null) {
+                System.clearProperty(GeneradorCodigosTemporal.PROPIEDAD_NODO);
+            } else {
+                System.setProperty(GeneradorCodigosTemporal.PROPIEDAD_NODO, anterior);
+            }
+        }
+    }
+    
+    @Test
+    void codigos_de_un_generador_deben_ordenarse_por_creacion() {
+        GeneradorCodigosTemporal generador = new GeneradorCodigosTemporal(1);
+        String anterior = generador.generar();
+        for (int i = 0; i < 10_000; i++) {
+            String siguiente = generador.generar();
+            assertTrue(siguiente.compareTo(anterior) > 0);
+            anterior = siguiente;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package modelo;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonType;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.junit.jupiter.api.Test;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para CodecCita (documento BSON de una cita)
+ */
+class CodecCitaTest {
+    
+    private final CodecCita codec = new CodecCita();
+    
+    @Test
+    void debe_guardar_fecha_y_hora_nativas_y_leerlas_igual() {
+        Cita cita = new Cita("Medicina General", "Dr. Juan Pérez",
+                LocalDate.of(2025, 3, 14), LocalTime.of(10, 30), "Control");
+        cita.marcarAtendida();
+        
+        BsonDocument documento = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(documento), cita, EncoderContext.builder().build());
+        
+        assertEquals(BsonType.DATE_TIME, documento.get("fecha").getBsonType());
+        assertEquals(630, documento.getInt32("hora").getValue());
+        assertEquals("ATENDIDA", documento.getString("estado").getValue());
+        assertEquals(CodecCita.valorFecha(cita.getFecha()), documento.get("fecha"));
+        
+        Cita leida = codec.decode(new BsonDocumentReader(documento), DecoderContext.builder().build());
+        assertEquals(cita.getCodigo(), leida.getCodigo());
+        assertEquals(cita.getFecha(), leida.getFecha());
+        assertEquals(cita.getHora(), leida.getHora());
+        assertEquals(Cita.EstadoCita.ATENDIDA, leida.getEstado());
+        assertEquals(cita.getFechaCreacion().withNano(cita.getFechaCreacion().getNano() / 1_000_000 * 1_000_000),
+                     leida.getFechaCreacion());
+    }
+    
+    @Test
+    void debe_leer_documentos_antiguos_con_texto() {
+        BsonDocument antiguo = new BsonDocument("_id", new BsonObjectId())
+            .append("codigo", new BsonString("CITA-ANTIGUA"))
+            .append("servicio", new BsonString("Odontología"))
+            .append("personal", new BsonString("Dra. María García"))
+            .append("fecha", new BsonString("2024-12-31"))
+            .append("hora", new BsonString("08:15"))
+            .append("motivo", new BsonString("Limpieza"))
+            .append("estado", new BsonString("CANCELADA"))
+            .append("fechaCreacion", new BsonString("2024-12-01T09:00:00.123456789"));
+        
+        Cita cita = codec.decode(new BsonDocumentReader(antiguo), DecoderContext.builder().build());
+        
+        assertEquals("CITA-ANTIGUA", cita.getCodigo());
+        assertEquals(LocalDate.of(2024, 12, 31), cita.getFecha());
+        assertEquals(LocalTime.of(8, 15), cita.getHora());
+        assertEquals(Cita.EstadoCita.CANCELADA, cita.getEstado());
+        assertEquals(LocalDateTime.of(2024, 12, 1, 9, 0, 0, 123456789), cita.getFechaCreacion());
+    }
+    
+    @Test
+    void leerHora_debe_aceptar_minutos_y_texto() {
+        assertEquals(LocalTime.of(10, 45), CodecCita.leerHora(new BsonInt32(645)));
+        assertEquals(LocalTime.of(10, 45), CodecCita.leerHora(new BsonString("10:45")));
+    }
+}
@@ -0,0 +1,88 @@
+package modelo;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para ColaEscrituras (escrituras agrupadas por lote)
+ */
+class ColaEscriturasTest {
+    
+    @Test
+    void debe_escribir_por_tamano_e_informar_cada_resultado() throws Exception {
+        List<Integer> tamanos = Collections.synchronizedList(new ArrayList<>());
+        try (ColaEscrituras<Integer> cola = new ColaEscrituras<>("prueba", 3, 60_000, (lote, errores) -> {
+            tamanos.add(lote.size());
+            boolean[] aplicadas = new boolean[lote.size()];
+            for (int i = 0; i < lote.size(); i++) {
+                aplicadas[i] = lote.get(i) % 2 == 0;
+            }
+            return aplicadas;
+        })) {
+            List<CompletableFuture<Boolean>> resultados = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                resultados.add(cola.encolar(i));
+            }
+            
+            for (int i = 0; i < 6; i++) {
+                assertEquals(i % 2 == 0, resultados.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(List.of(3, 3), tamanos);
+        }
+    }
+    
+    @Test
+    void debe_escribir_por_tiempo_y_al_vaciar() throws Exception {
+        try (ColaEscrituras<String> cola = new ColaEscrituras<>("prueba", 100, 20, (lote, errores) -> new boolean[]{true})) {
+            assertTrue(cola.encolar("a").get(5, TimeUnit.SECONDS));
+        }
+        
+        try (ColaEscrituras<String> cola = new ColaEscrituras<>("prueba", 100, 60_000, (lote, errores) -> {
+            boolean[] aplicadas = new boolean[lote.size()];
+            Arrays.fill(aplicadas, true);
+            return aplicadas;
+        })) {
+            CompletableFuture<Boolean> resultado = cola.encolar("b");
+            cola.vaciar();
+            
+            assertTrue(resultado.isDone());
+            assertEquals(0, cola.pendientes());
+        }
+    }
+    
+    @Test
+    void un_error_de_escritura_debe_fallar_todo_el_lote() {
+        try (ColaEscrituras<String> cola = new ColaEscrituras<>("prueba", 2, 60_000, (lote, errores) -> {
+            throw new IllegalStateException("sin conexión");
+        })) {
+            CompletableFuture<Boolean> primera = cola.encolar("a");
+            CompletableFuture<Boolean> segunda = cola.encolar("b");
+            
+            ExecutionException error = assertThrows(ExecutionException.class, () -> primera.get(5, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof IllegalStateException);
+            assertThrows(ExecutionException.class, () -> segunda.get(5, TimeUnit.SECONDS));
+        }
+    }
+    
+    @Test
+    void un_error_de_una_operacion_debe_fallar_solo_esa() throws Exception {
+        try (ColaEscrituras<String> cola = new ColaEscrituras<>("prueba", 2, 60_000, (lote, errores) -> {
+            errores[1] = new IllegalStateException("grupo rechazado");
+            return new boolean[]{true, false};
+        })) {
+            CompletableFuture<Boolean> primera = cola.encolar("a");
+            CompletableFuture<Boolean> segunda = cola.encolar("b");
+            
+            assertTrue(primera.get(5, TimeUnit.SECONDS));
+            ExecutionException error = assertThrows(ExecutionException.class, () -> segunda.get(5, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof IllegalStateException);
+        }
+    }
+}
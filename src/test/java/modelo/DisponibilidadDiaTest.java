@@ -0,0 +1,46 @@
+package modelo;
+
+import org.junit.jupiter.api.Test;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas unitarias para DisponibilidadDia
+ * HU-02: Consultar disponibilidad en tiempo real
+ */
+class DisponibilidadDiaTest {
+    
+    @Test
+    void libre_debe_tener_todos_los_bloques_libres() {
+        DisponibilidadDia disponibilidad = DisponibilidadDia.libre();
+        
+        assertTrue(disponibilidad.estaLibre(LocalTime.of(0, 0)));
+        assertTrue(disponibilidad.estaLibre(LocalTime.of(23, 45)));
+        assertEquals(DisponibilidadDia.BLOQUES_POR_DIA,
+                     disponibilidad.contarLibres(LocalTime.MIN, LocalTime.MIN));
+    }
+    
+    @Test
+    void estaLibre_debe_marcar_el_bloque_de_15_minutos_completo() {
+        DisponibilidadDia disponibilidad = DisponibilidadDia.desdeHorarios(
+            Arrays.asList(LocalTime.of(10, 0), LocalTime.of(20, 7)));
+        
+        assertFalse(disponibilidad.estaLibre(LocalTime.of(10, 0)));
+        assertFalse(disponibilidad.estaLibre(LocalTime.of(10, 14)));
+        assertTrue(disponibilidad.estaLibre(LocalTime.of(10, 15)));
+        assertFalse(disponibilidad.estaLibre(LocalTime.of(20, 0)));
+    }
+    
+    @Test
+    void obtenerHorariosLibres_debe_excluir_ocupados_en_ambas_palabras() {
+        DisponibilidadDia disponibilidad = DisponibilidadDia.desdeHorarios(
+            Arrays.asList(LocalTime.of(15, 45), LocalTime.of(16, 0)));
+        
+        List<LocalTime> libres = disponibilidad.obtenerHorariosLibres(LocalTime.of(15, 30), LocalTime.of(16, 30));
+        
+        assertEquals(Arrays.asList(LocalTime.of(15, 30), LocalTime.of(16, 15)), libres);
+        assertEquals(2, disponibilidad.contarLibres(LocalTime.of(15, 30), LocalTime.of(16, 30)));
+    }
+}
@@ -0,0 +1,135 @@
+package modelo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de RepositorioCitasCache sobre el repositorio en memoria
+ * Cuenta las llamadas que llegan al repositorio real
+ */
+class RepositorioCitasCacheTest {
+    
+    private static final String PERSONAL = "Dr. Juan Pérez";
+    
+    private RepositorioCitas real;
+    private Map<String, Integer> llamadas;
+    private List<OyenteCitas> oyentes;
+    private RepositorioCitasCache cache;
+    private LocalDate fecha;
+    
+    @BeforeEach
+    void setUp() {
+        real = RepositorioCitas.obtenerInstancia();
+        real.limpiar();
+        llamadas = new ConcurrentHashMap<>();
+        oyentes = new CopyOnWriteArrayList<>();
+        IRepositorioCitas contador = (IRepositorioCitas) Proxy.newProxyInstance(
+                IRepositorioCitas.class.getClassLoader(),
+                new Class<?>[] {IRepositorioCitas.class},
+                (proxy, metodo, argumentos) -> {
+                    llamadas.merge(metodo.getName(), 1, Integer::sum);
+                    if (metodo.getName().equals("agregarOyente")) {
+                        oyentes.add((OyenteCitas) argumentos[0]);
+                    }
+                    try {
+                        return metodo.invoke(real, argumentos);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        cache = new RepositorioCitasCache(contador, 2);
+        fecha = LocalDate.now().plusDays(1);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        real.limpiar();
+    }
+    
+    @Test
+    void consultas_repetidas_deben_servirse_desde_cache() {
+        Cita cita = new Cita("Consulta General", PERSONAL, fecha, LocalTime.of(9, 0), "Chequeo");
+        assertTrue(cache.guardar(cita));
+        
+        for (int i = 0; i < 5; i++) {
+            assertSame(cita, cache.buscarPorCodigo(cita.getCodigo()));
+            assertEquals(1, cache.obtenerPorFecha(fecha).size());
+            assertTrue(cache.estaOcupado(PERSONAL, fecha, LocalTime.of(9, 0)));
+            assertFalse(cache.obtenerDisponibilidad(PERSONAL, fecha).estaLibre(LocalTime.of(9, 0)));
+        }
+        
+        assertEquals(1, llamadas.get("buscarPorCodigo"));
+        assertEquals(1, llamadas.get("obtenerPorFecha"));
+        assertEquals(1, llamadas.get("obtenerHorariosOcupados"));
+    }
+    
+    @Test
+    void escrituras_deben_invalidar_entradas_afectadas() {
+        Cita cita = new Cita("Consulta General", PERSONAL, fecha, LocalTime.of(9, 0), "Chequeo");
+        cache.guardar(cita);
+        assertTrue(cache.estaOcupado(PERSONAL, fecha, LocalTime.of(9, 0)));
+        assertEquals(1, cache.obtenerPorFecha(fecha).size());
+        
+        Cita otra = new Cita("Consulta General", PERSONAL, fecha, LocalTime.of(10, 0), "Chequeo");
+        cache.guardar(otra);
+        assertEquals(2, cache.obtenerPorFecha(fecha).size());
+        assertTrue(cache.estaOcupado(PERSONAL, fecha, LocalTime.of(10, 0)));
+        
+        assertTrue(cache.cancelarCita(cita.getCodigo()));
+        assertFalse(cache.estaOcupado(PERSONAL, fecha, LocalTime.of(9, 0)));
+        assertEquals(Cita.EstadoCita.CANCELADA, cache.buscarPorCodigo(cita.getCodigo()).getEstado());
+    }
+    
+    @Test
+    void cambios_en_el_repositorio_real_deben_invalidar_la_cache() {
+        Cita cita = new Cita("Consulta General", PERSONAL, fecha, LocalTime.of(9, 0), "Chequeo");
+        cache.guardar(cita);
+        assertTrue(cache.estaOcupado(PERSONAL, fecha, LocalTime.of(9, 0)));
+        
+        // Cancelada sin pasar por la caché
+        assertTrue(real.cancelarCita(cita.getCodigo()));
+        
+        assertFalse(cache.estaOcupado(PERSONAL, fecha, LocalTime.of(9, 0)));
+    }
+    
+    @Test
+    void ediciones_y_eliminaciones_del_repositorio_real_deben_invalidar_la_cache() {
+        Cita anterior = new Cita("Consulta General", PERSONAL, fecha, LocalTime.of(9, 0), "Chequeo");
+        Cita movida = new Cita("Consulta General", "Dra. María García", fecha.plusDays(1), LocalTime.of(11, 0), "Chequeo");
+        movida.setCodigo(anterior.getCodigo());
+        cache.obtenerHorariosOcupados(PERSONAL, fecha);
+        cache.obtenerHorariosOcupados("Dra. María García", fecha.plusDays(1));
+        
+        // Edición de fecha, hora y personal: se invalidan la versión vieja y la nueva
+        oyentes.forEach(oyente -> oyente.citaCambiada(EventoCita.actualizada(movida, anterior)));
+        cache.obtenerHorariosOcupados(PERSONAL, fecha);
+        cache.obtenerHorariosOcupados("Dra. María García", fecha.plusDays(1));
+        assertEquals(4, llamadas.get("obtenerHorariosOcupados"));
+        
+        oyentes.forEach(oyente -> oyente.citaCambiada(EventoCita.eliminada(movida)));
+        cache.obtenerHorariosOcupados("Dra. María García", fecha.plusDays(1));
+        assertEquals(5, llamadas.get("obtenerHorariosOcupados"));
+    }
+    
+    @Test
+    void cache_debe_respetar_capacidad() {
+        for (int i = 0; i < 3; i++) {
+            cache.obtenerPorFecha(fecha.plusDays(i));
+        }
+        // Capacidad 2: la primera fecha fue descartada
+        cache.obtenerPorFecha(fecha.plusDays(2));
+        cache.obtenerPorFecha(fecha);
+        
+        assertEquals(4, llamadas.get("obtenerPorFecha"));
+    }
+}
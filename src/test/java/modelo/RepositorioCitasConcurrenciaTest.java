@@ -0,0 +1,140 @@
+package modelo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de estrés para RepositorioCitas
+ * Valida que bajo concurrencia un mismo horario nunca se reserve dos veces
+ */
+class RepositorioCitasConcurrenciaTest {
+    
+    private static final int HILOS = 64;
+    private static final String[] PERSONAL = {
+        "Dr. Juan Pérez", "Dra. María González", "Dr. Carlos Ramírez", "Dra. Ana López"
+    };
+    
+    private RepositorioCitas repositorio;
+    private ExecutorService executor;
+    
+    @BeforeEach
+    void setUp() {
+        repositorio = RepositorioCitas.obtenerInstancia();
+        repositorio.limpiar();
+        executor = Executors.newFixedThreadPool(HILOS);
+    }
+    
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        repositorio.limpiar();
+    }
+    
+    @Test
+    void guardar_concurrente_no_debe_duplicar_horarios() throws Exception {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        List<LocalTime> horas = horasDelDia();
+        int horariosTotales = PERSONAL.length * horas.size();
+        
+        CountDownLatch inicio = new CountDownLatch(1);
+        AtomicInteger exitosas = new AtomicInteger();
+        List<Future<?>> tareas = new ArrayList<>();
+        
+        // Todos los hilos intentan reservar todos los horarios
+        for (int h = 0; h < HILOS; h++) {
+            tareas.add(executor.submit(() -> {
+                inicio.await();
+                for (String personal : PERSONAL) {
+                    for (LocalTime hora : horas) {
+                        if (repositorio.guardar(new Cita("Consulta", personal, fecha, hora, "Estrés"))) {
+                            exitosas.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        
+        inicio.countDown();
+        for (Future<?> tarea : tareas) {
+            tarea.get(60, TimeUnit.SECONDS);
+        }
+        
+        assertEquals(horariosTotales, exitosas.get());
+        assertEquals(horariosTotales, repositorio.contarTotal());
+        for (String personal : PERSONAL) {
+            assertEquals(horas.size(), repositorio.obtenerHorariosOcupados(personal, fecha).size());
+            long citasPersonal = repositorio.obtenerPorPersonal(personal).stream()
+                    .map(Cita::getHora)
+                    .distinct()
+                    .count();
+            assertEquals(horas.size(), citasPersonal);
+        }
+    }
+    
+    @Test
+    void cancelar_y_reservar_concurrente_debe_mantener_un_solo_titular() throws Exception {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        LocalTime hora = LocalTime.of(10, 0);
+        String personal = PERSONAL[0];
+        Cita original = new Cita("Consulta", personal, fecha, hora, "Original");
+        assertTrue(repositorio.guardar(original));
+        
+        CountDownLatch inicio = new CountDownLatch(1);
+        AtomicInteger exitosas = new AtomicInteger();
+        List<Future<?>> tareas = new ArrayList<>();
+        
+        tareas.add(executor.submit(() -> {
+            inicio.await();
+            return repositorio.cancelarCita(original.getCodigo());
+        }));
+        for (int h = 1; h < HILOS; h++) {
+            tareas.add(executor.submit(() -> {
+                inicio.await();
+                // Reintentar hasta que la cancelación libere el horario o se agote el intento
+                for (int i = 0; i < 1000; i++) {
+                    if (repositorio.guardar(new Cita("Consulta", personal, fecha, hora, "Reintento"))) {
+                        exitosas.incrementAndGet();
+                        break;
+                    }
+                }
+                return null;
+            }));
+        }
+        
+        inicio.countDown();
+        for (Future<?> tarea : tareas) {
+            tarea.get(60, TimeUnit.SECONDS);
+        }
+        
+        long pendientesEnHorario = repositorio.obtenerPendientes().stream()
+                .filter(c -> c.getPersonal().equals(personal) && c.getHora().equals(hora))
+                .count();
+        
+        assertEquals(Cita.EstadoCita.CANCELADA, original.getEstado());
+        assertTrue(exitosas.get() <= 1, "Solo una reserva puede ocupar el horario liberado");
+        assertEquals(exitosas.get(), pendientesEnHorario);
+        assertEquals(exitosas.get() == 1, repositorio.estaOcupado(personal, fecha, hora));
+    }
+    
+    private List<LocalTime> horasDelDia() {
+        List<LocalTime> horas = new ArrayList<>();
+        for (LocalTime hora = LocalTime.of(8, 0); hora.isBefore(LocalTime.of(18, 0)); hora = hora.plusMinutes(30)) {
+            horas.add(hora);
+        }
+        return horas;
+    }
+}
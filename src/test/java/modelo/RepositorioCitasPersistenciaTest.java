@@ -0,0 +1,272 @@
+package modelo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del modo persistente de RepositorioCitas (diario en disco)
+ */
+class RepositorioCitasPersistenciaTest {
+    
+    @TempDir
+    Path directorio;
+    
+    private RepositorioCitas repositorio;
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        if (repositorio != null) {
+            repositorio.cerrar();
+        }
+    }
+    
+    @Test
+    void reabrir_debe_recuperar_citas_y_estados() throws IOException {
+        Path archivo = directorio.resolve("citas.diario");
+        LocalDate fecha = LocalDate.now().plusDays(3);
+        
+        repositorio = RepositorioCitas.conDiario(archivo);
+        assertEquals(0, repositorio.contarTotal());
+        Cita cita1 = new Cita("Consulta General", "Dr. Juan Pérez", fecha, LocalTime.of(9, 0), "Chequeo");
+        Cita cita2 = new Cita("Consulta General", "Dr. Juan Pérez", fecha, LocalTime.of(10, 0), null);
+        assertTrue(repositorio.guardar(cita1));
+        assertTrue(repositorio.guardar(cita2));
+        assertTrue(repositorio.cancelarCita(cita1.getCodigo()));
+        repositorio.cerrar();
+        
+        repositorio = RepositorioCitas.conDiario(archivo);
+        
+        assertEquals(2, repositorio.contarTotal());
+        Cita recuperada = repositorio.buscarPorCodigo(cita2.getCodigo());
+        assertNotNull(recuperada);
+        assertEquals("Dr. Juan Pérez", recuperada.getPersonal());
+        assertEquals(LocalTime.of(10, 0), recuperada.getHora());
+        assertNull(recuperada.getMotivo());
+        assertEquals(Cita.EstadoCita.CANCELADA, repositorio.buscarPorCodigo(cita1.getCodigo()).getEstado());
+        assertFalse(repositorio.estaOcupado("Dr. Juan Pérez", fecha, LocalTime.of(9, 0)));
+        assertTrue(repositorio.estaOcupado("Dr. Juan Pérez", fecha, LocalTime.of(10, 0)));
+    }
+    
+    @Test
+    void limpiar_debe_persistir() throws IOException {
+        Path archivo = directorio.resolve("citas.diario");
+        repositorio = RepositorioCitas.conDiario(archivo);
+        repositorio.guardar(new Cita("Consulta General", "Dr. Juan Pérez",
+                LocalDate.now().plusDays(1), LocalTime.of(8, 0), "Chequeo"));
+        repositorio.limpiar();
+        Cita posterior = new Cita("Consulta General", "Dra. Ana López",
+                LocalDate.now().plusDays(1), LocalTime.of(8, 0), "Chequeo");
+        repositorio.guardar(posterior);
+        repositorio.cerrar();
+        
+        repositorio = RepositorioCitas.conDiario(archivo);
+        
+        assertEquals(1, repositorio.contarTotal());
+        assertNotNull(repositorio.buscarPorCodigo(posterior.getCodigo()));
+    }
+    
+    @Test
+    void cambios_que_no_llegan_al_diario_deben_rechazarse() throws Exception {
+        Path archivo = directorio.resolve("citas.diario");
+        LocalDate fecha = LocalDate.now().plusDays(2);
+        repositorio = RepositorioCitas.conDiario(archivo);
+        Cita cita = new Cita("Consulta General", "Dr. Juan Pérez", fecha, LocalTime.of(9, 0), "Chequeo");
+        assertTrue(repositorio.guardar(cita));
+        
+        // El escritor del diario se detiene (como tras un error de disco)
+        Field campoDiario = RepositorioCitas.class.getDeclaredField("diario");
+        campoDiario.setAccessible(true);
+        ((DiarioCitas) campoDiario.get(repositorio)).close();
+        
+        assertFalse(repositorio.cancelarCita(cita.getCodigo()));
+        assertThrows(IllegalStateException.class, cita::marcarAtendida);
+        assertEquals(Cita.EstadoCita.PENDIENTE, cita.getEstado());
+        assertEquals(1, repositorio.contarPorEstado(Cita.EstadoCita.PENDIENTE));
+        assertTrue(repositorio.estaOcupado("Dr. Juan Pérez", fecha, LocalTime.of(9, 0)));
+        
+        assertFalse(repositorio.limpiar());
+        assertEquals(1, repositorio.contarTotal());
+        repositorio = null;
+    }
+    
+    @Test
+    void lote_debe_persistir() throws IOException {
+        Path archivo = directorio.resolve("citas.diario");
+        repositorio = RepositorioCitas.conDiario(archivo);
+        List<Cita> lote = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            lote.add(new Cita("Vacunación", "Dr. Juan Pérez",
+                    LocalDate.now().plusDays(1), LocalTime.of(8, 0).plusMinutes(15L * i), "Campaña"));
+        }
+        assertTrue(repositorio.guardarLote(lote).todasAceptadas());
+        repositorio.cerrar();
+        
+        repositorio = RepositorioCitas.conDiario(archivo);
+        
+        assertEquals(20, repositorio.contarTotal());
+        assertTrue(repositorio.estaOcupado("Dr. Juan Pérez", LocalDate.now().plusDays(1), LocalTime.of(12, 45)));
+    }
+    
+    @Test
+    void registro_final_incompleto_debe_descartarse() throws IOException {
+        Path archivo = directorio.resolve("citas.diario");
+        repositorio = RepositorioCitas.conDiario(archivo);
+        Cita cita = new Cita("Consulta General", "Dr. Juan Pérez",
+                LocalDate.now().plusDays(1), LocalTime.of(8, 0), "Chequeo");
+        repositorio.guardar(cita);
+        repositorio.cerrar();
+        
+        // Simular una escritura cortada a la mitad
+        long tamanoValido = Files.size(archivo);
+        Files.write(archivo, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        
+        repositorio = RepositorioCitas.conDiario(archivo);
+        
+        assertEquals(1, repositorio.contarTotal());
+        assertNotNull(repositorio.buscarPorCodigo(cita.getCodigo()));
+        assertEquals(tamanoValido, Files.size(archivo));
+    }
+    
+    @Test
+    void escrituras_concurrentes_deben_persistir_todas() throws Exception {
+        Path archivo = directorio.resolve("citas.diario");
+        repositorio = RepositorioCitas.conDiario(archivo);
+        LocalDate fecha = LocalDate.now().plusDays(2);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        
+        try {
+            List<Future<Boolean>> tareas = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                LocalTime hora = LocalTime.of(6, 0).plusMinutes(15L * i);
+                tareas.add(executor.submit(() -> repositorio.guardar(
+                        new Cita("Consulta General", "Dr. Juan Pérez", fecha, hora, "Chequeo"))));
+            }
+            for (Future<Boolean> tarea : tareas) {
+                assertTrue(tarea.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        repositorio.cerrar();
+        
+        repositorio = RepositorioCitas.conDiario(archivo);
+        
+        assertEquals(64, repositorio.contarTotal());
+        assertEquals(64, repositorio.contarPorEstado(Cita.EstadoCita.PENDIENTE));
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            assertTrue(canal.size() > 0);
+        }
+    }
+    
+    @Test
+    void instantanea_mas_cola_del_diario_debe_restaurar_estado() throws IOException {
+        Path archivo = directorio.resolve("citas.diario");
+        LocalDate fecha = LocalDate.now().plusDays(4);
+        repositorio = RepositorioCitas.conDiario(archivo);
+        Cita antes = new Cita("Consulta General", "Dr. Juan Pérez", fecha, LocalTime.of(9, 0), "Chequeo");
+        Cita atendida = new Cita("Consulta General", "Dr. Juan Pérez", fecha, LocalTime.of(10, 0), "Chequeo");
+        repositorio.guardar(antes);
+        repositorio.guardar(atendida);
+        atendida.marcarAtendida();
+        repositorio.guardarInstantanea();
+        long posicion = Files.size(archivo);
+        
+        // Cola posterior a la instantánea
+        Cita despues = new Cita("Consulta General", "Dr. Juan Pérez", fecha, LocalTime.of(11, 0), "Chequeo");
+        repositorio.guardar(despues);
+        repositorio.cancelarCita(antes.getCodigo());
+        assertTrue(Files.size(archivo) > posicion);
+        
+        // Simular una caída: no se cierra el repositorio ni se escribe otra instantánea
+        Files.copy(archivo, directorio.resolve("copia.diario"), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(directorio.resolve("citas.diario.instantanea"),
+                directorio.resolve("copia.diario.instantanea"), StandardCopyOption.REPLACE_EXISTING);
+        RepositorioCitas reabierto = RepositorioCitas.conDiario(directorio.resolve("copia.diario"));
+        
+        try {
+            assertEquals(3, reabierto.contarTotal());
+            assertEquals(Cita.EstadoCita.CANCELADA, reabierto.buscarPorCodigo(antes.getCodigo()).getEstado());
+            assertEquals(Cita.EstadoCita.ATENDIDA, reabierto.buscarPorCodigo(atendida.getCodigo()).getEstado());
+            assertEquals(Cita.EstadoCita.PENDIENTE, reabierto.buscarPorCodigo(despues.getCodigo()).getEstado());
+            assertEquals(1, reabierto.contarPorEstado(Cita.EstadoCita.PENDIENTE));
+            assertEquals(1, reabierto.contarPorEstado(Cita.EstadoCita.ATENDIDA));
+            assertTrue(reabierto.estaOcupado("Dr. Juan Pérez", fecha, LocalTime.of(11, 0)));
+            assertFalse(reabierto.estaOcupado("Dr. Juan Pérez", fecha, LocalTime.of(9, 0)));
+        } finally {
+            reabierto.cerrar();
+        }
+    }
+    
+    @Test
+    void instantanea_danada_debe_ignorarse() throws IOException {
+        Path archivo = directorio.resolve("citas.diario");
+        repositorio = RepositorioCitas.conDiario(archivo);
+        Cita cita = new Cita("Consulta General", "Dr. Juan Pérez",
+                LocalDate.now().plusDays(1), LocalTime.of(8, 0), "Chequeo");
+        repositorio.guardar(cita);
+        repositorio.cerrar();
+        
+        // Corromper el cuerpo de la instantánea: se reproduce el diario completo
+        Path instantanea = directorio.resolve("citas.diario.instantanea");
+        byte[] contenido = Files.readAllBytes(instantanea);
+        contenido[contenido.length - 1] ^= 0x7F;
+        Files.write(instantanea, contenido);
+        
+        repositorio = RepositorioCitas.conDiario(archivo);
+        
+        assertEquals(1, repositorio.contarTotal());
+        assertNotNull(repositorio.buscarPorCodigo(cita.getCodigo()));
+    }
+    
+    @Test
+    void instantaneas_deben_compactar_el_diario() throws IOException {
+        Path archivo = directorio.resolve("citas.diario");
+        LocalDate fecha = LocalDate.now().plusDays(5);
+        repositorio = RepositorioCitas.conDiario(archivo);
+        List<Cita> citas = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Cita cita = new Cita("Consulta General", "Dr. Juan Pérez", fecha,
+                    LocalTime.of(6, 0).plusMinutes(15L * i), "Chequeo");
+            citas.add(cita);
+            repositorio.guardar(cita);
+        }
+        repositorio.guardarInstantanea();
+        citas.get(0).marcarAtendida();
+        long antes = Files.size(archivo);
+        
+        // La segunda instantánea descarta los registros que ya cubría la primera
+        repositorio.guardarInstantanea();
+        assertTrue(Files.size(archivo) < antes);
+        Cita posterior = new Cita("Consulta General", "Dra. Ana López", fecha, LocalTime.of(8, 0), "Chequeo");
+        repositorio.guardar(posterior);
+        repositorio.cerrar();
+        
+        // Con la última instantánea dañada se usa la anterior y la cola del diario
+        Path instantanea = directorio.resolve("citas.diario.instantanea");
+        byte[] contenido = Files.readAllBytes(instantanea);
+        contenido[contenido.length - 1] ^= 0x7F;
+        Files.write(instantanea, contenido);
+        
+        repositorio = RepositorioCitas.conDiario(archivo);
+        
+        assertEquals(31, repositorio.contarTotal());
+        assertEquals(Cita.EstadoCita.ATENDIDA, repositorio.buscarPorCodigo(citas.get(0).getCodigo()).getEstado());
+        assertNotNull(repositorio.buscarPorCodigo(posterior.getCodigo()));
+    }
+}
@@ -4,8 +4,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.AfterEach;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -68,6 +73,48 @@ class RepositorioCitasTest {
         assertEquals(1, repositorio.contarTotal());
     }
     
+    @Test
+    void guardarLote_debe_informar_resultado_por_cita() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita existente = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(9, 0), "Existente");
+        repositorio.guardar(existente);
+        
+        Cita aceptada = new Cita("Vacunación", "Dr. Test", fecha, LocalTime.of(10, 0), "Campaña");
+        Cita choqueEnLote = new Cita("Vacunación", "Dr. Test", fecha, LocalTime.of(10, 0), "Campaña");
+        Cita ocupada = new Cita("Vacunación", "Dr. Test", fecha, LocalTime.of(9, 0), "Campaña");
+        Cita sinHora = new Cita("Vacunación", "Dr. Test", fecha, null, "Campaña");
+        Cita otra = new Cita("Vacunación", "Dra. Otra", fecha, LocalTime.of(10, 0), "Campaña");
+        
+        ResultadoLote resultado = repositorio.guardarLote(
+                List.of(aceptada, choqueEnLote, ocupada, sinHora, otra));
+        
+        List<ResultadoLote.Motivo> motivos = resultado.getEntradas().stream()
+                .map(ResultadoLote.Entrada::getMotivo)
+                .collect(Collectors.toList());
+        assertEquals(List.of(ResultadoLote.Motivo.ACEPTADA,
+                             ResultadoLote.Motivo.CONFLICTO_EN_LOTE,
+                             ResultadoLote.Motivo.HORARIO_OCUPADO,
+                             ResultadoLote.Motivo.CITA_INVALIDA,
+                             ResultadoLote.Motivo.ACEPTADA), motivos);
+        assertEquals(List.of(aceptada, otra), resultado.getAceptadas());
+        assertEquals(3, repositorio.contarTotal());
+        assertTrue(repositorio.estaOcupado("Dr. Test", fecha, LocalTime.of(10, 0)));
+    }
+    
+    @Test
+    void guardar_debe_fallar_con_codigo_duplicado() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        
+        Cita cita1 = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 0), "Test 1");
+        Cita cita2 = new Cita("Consulta", "Dr. Otro", fecha, LocalTime.of(11, 0), "Test 2");
+        cita2.setCodigo(cita1.getCodigo());
+        
+        assertTrue(repositorio.guardar(cita1));
+        assertFalse(repositorio.guardar(cita2));
+        assertEquals(1, repositorio.contarTotal());
+        assertFalse(repositorio.estaOcupado("Dr. Otro", fecha, LocalTime.of(11, 0)));
+    }
+    
     @Test
     void buscarPorCodigo_debe_retornar_cita_correcta() {
         LocalDate fecha = LocalDate.now().plusDays(1);
@@ -87,6 +134,17 @@ class RepositorioCitasTest {
         assertNull(encontrada);
     }
     
+    @Test
+    void buscarPorCodigo_debe_retornar_null_despues_de_limpiar() {
+        Cita cita = new Cita("Consulta", "Dr. Test", LocalDate.now().plusDays(1), LocalTime.of(10, 0), "Test");
+        repositorio.guardar(cita);
+        
+        repositorio.limpiar();
+        
+        assertNull(repositorio.buscarPorCodigo(cita.getCodigo()));
+        assertFalse(repositorio.cancelarCita(cita.getCodigo()));
+    }
+    
     @Test
     void obtenerTodas_debe_retornar_lista_completa() {
         LocalDate fecha = LocalDate.now().plusDays(1);
@@ -98,6 +156,132 @@ class RepositorioCitasTest {
         assertEquals(2, todas.size());
     }
     
+    @Test
+    void obtenerTodas_debe_ser_una_vista_estable_ante_escrituras() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita atendida = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(9, 0), "Test 1");
+        repositorio.guardar(atendida);
+        repositorio.guardar(new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 0), "Test 2"));
+        
+        List<Cita> antes = repositorio.obtenerTodas();
+        repositorio.guardar(new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(11, 0), "Test 3"));
+        atendida.marcarAtendida();
+        repositorio.compactarFinalizadas();
+        
+        assertEquals(2, antes.size());
+        assertEquals(3, repositorio.obtenerTodas().size());
+        assertEquals(3, repositorio.obtenerTodas().stream().map(Cita::getCodigo).distinct().count());
+        assertThrows(UnsupportedOperationException.class, () -> antes.add(atendida));
+    }
+    
+    @Test
+    void archivarFinalizadas_debe_mover_solo_las_pasadas_sin_ocultarlas() {
+        LocalDate ayer = LocalDate.now().minusDays(1);
+        LocalDate manana = LocalDate.now().plusDays(1);
+        Cita pasada = new Cita("Consulta", "Dr. Test", ayer, LocalTime.of(9, 0), "Pasada");
+        pasada.setEstado(Cita.EstadoCita.ATENDIDA);
+        Cita futuraCancelada = new Cita("Consulta", "Dr. Test", manana, LocalTime.of(9, 0), "Futura");
+        futuraCancelada.setEstado(Cita.EstadoCita.CANCELADA);
+        Cita pendiente = new Cita("Consulta", "Dr. Test", manana, LocalTime.of(10, 0), "Pendiente");
+        repositorio.guardar(pasada);
+        repositorio.guardar(futuraCancelada);
+        repositorio.guardar(pendiente);
+        
+        assertEquals(1, repositorio.archivarFinalizadas(LocalDate.now()));
+        
+        assertEquals(3, repositorio.contarTotal());
+        assertEquals(3, repositorio.obtenerTodas().size());
+        assertEquals(3, repositorio.obtenerPorPersonal("Dr. Test").size());
+        assertEquals(3, repositorio.obtenerPorRango(ayer, manana).size());
+        assertEquals(Cita.EstadoCita.ATENDIDA, repositorio.buscarPorCodigo(pasada.getCodigo()).getEstado());
+        assertEquals(1L, repositorio.contarPorEstado(Cita.EstadoCita.ATENDIDA));
+        assertEquals(0, repositorio.archivarFinalizadas(LocalDate.now()));
+    }
+    
+    @Test
+    void obtenerPorServicio_debe_usar_indice_y_segmentos() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita atendida = new Cita("Odontología", "Dr. Test", fecha, LocalTime.of(9, 0), "Test 1");
+        Cita pendiente = new Cita("Odontología", "Dr. Test", fecha.plusDays(1), LocalTime.of(8, 0), "Test 2");
+        repositorio.guardar(atendida);
+        repositorio.guardar(pendiente);
+        repositorio.guardar(new Cita("Consulta General", "Dr. Test", fecha, LocalTime.of(10, 0), "Test 3"));
+        atendida.marcarAtendida();
+        repositorio.compactarFinalizadas();
+        
+        List<Cita> odontologia = repositorio.obtenerPorServicio("Odontología");
+        
+        assertEquals(List.of(atendida.getCodigo(), pendiente.getCodigo()),
+                     odontologia.stream().map(Cita::getCodigo).collect(Collectors.toList()));
+        assertEquals(1, repositorio.obtenerPorServicioYFecha("Odontología", fecha).size());
+        assertEquals(1, repositorio.obtenerPorServicioYFecha("Odontología", fecha.plusDays(1)).size());
+        assertEquals(2, repositorio.obtenerPorServicioYRango("Odontología", fecha, fecha.plusDays(1)).size());
+        assertTrue(repositorio.obtenerPorServicio("Pediatría").isEmpty());
+    }
+    
+    @Test
+    void obtenerConteoPorEstado_debe_aplicar_los_filtros() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita atendida = new Cita("Odontología", "Dr. Test", fecha, LocalTime.of(9, 0), "Test 1");
+        repositorio.guardar(atendida);
+        repositorio.guardar(new Cita("Odontología", "Dra. Test", fecha.plusDays(1), LocalTime.of(9, 0), "Test 2"));
+        repositorio.guardar(new Cita("Consulta General", "Dr. Test", fecha, LocalTime.of(10, 0), "Test 3"));
+        atendida.marcarAtendida();
+        repositorio.compactarFinalizadas();
+        
+        Map<Cita.EstadoCita, Long> odontologia = repositorio.obtenerConteoPorEstado(null, "Odontología", null, null);
+        Map<Cita.EstadoCita, Long> drTestManana = repositorio.obtenerConteoPorEstado("Dr. Test", null, fecha, fecha);
+        
+        assertEquals(1L, odontologia.get(Cita.EstadoCita.ATENDIDA));
+        assertEquals(1L, odontologia.get(Cita.EstadoCita.PENDIENTE));
+        assertEquals(0L, odontologia.get(Cita.EstadoCita.CANCELADA));
+        assertEquals(1L, drTestManana.get(Cita.EstadoCita.ATENDIDA));
+        assertEquals(1L, drTestManana.get(Cita.EstadoCita.PENDIENTE));
+        assertEquals(repositorio.obtenerConteoPorEstado(), repositorio.obtenerConteoPorEstado(null, null, null, null));
+    }
+    
+    @Test
+    void obtenerConteoPorEstado_con_rango_abierto_debe_omitir_citas_sin_fecha() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        repositorio.guardar(new Cita("Odontología", "Dr. Test", fecha, LocalTime.of(9, 0), "Con fecha"));
+        repositorio.guardar(new Cita("Odontología", "Dr. Test", null, null, "Sin fecha"));
+        
+        Map<Cita.EstadoCita, Long> desde = repositorio.obtenerConteoPorEstado(null, null, fecha, null);
+        Map<Cita.EstadoCita, Long> servicioDesde = repositorio.obtenerConteoPorEstado(null, "Odontología", fecha, null);
+        
+        assertEquals(1L, desde.get(Cita.EstadoCita.PENDIENTE));
+        assertEquals(1L, servicioDesde.get(Cita.EstadoCita.PENDIENTE));
+        assertEquals(2L, repositorio.obtenerConteoPorEstado("Dr. Test", null, null, null).get(Cita.EstadoCita.PENDIENTE));
+    }
+    
+    @Test
+    void oyentes_deben_recibir_altas_cancelaciones_y_cambios_de_estado() {
+        List<EventoCita> eventos = new ArrayList<>();
+        OyenteCitas oyente = eventos::add;
+        repositorio.agregarOyente(oyente);
+        try {
+            LocalDate fecha = LocalDate.now().plusDays(1);
+            Cita cancelada = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(9, 0), "Test 1");
+            Cita atendida = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 0), "Test 2");
+            repositorio.guardar(cancelada);
+            repositorio.guardarLote(List.of(atendida));
+            repositorio.guardar(new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(9, 0), "Rechazada"));
+            repositorio.cancelarCita(cancelada.getCodigo());
+            atendida.marcarAtendida();
+            
+            assertEquals(List.of(EventoCita.Tipo.CREADA, EventoCita.Tipo.CREADA,
+                                 EventoCita.Tipo.CANCELADA, EventoCita.Tipo.ESTADO_CAMBIADO),
+                         eventos.stream().map(EventoCita::getTipo).collect(Collectors.toList()));
+            assertSame(atendida, eventos.get(3).getCita());
+            assertEquals(Cita.EstadoCita.PENDIENTE, eventos.get(3).getEstadoAnterior());
+        } finally {
+            repositorio.quitarOyente(oyente);
+        }
+        
+        repositorio.guardar(new Cita("Consulta", "Dr. Test", LocalDate.now().plusDays(2), LocalTime.of(9, 0), "Test"));
+        assertEquals(4, eventos.size());
+    }
+    
     @Test
     void obtenerPorPersonal_debe_filtrar_correctamente() {
         LocalDate fecha = LocalDate.now().plusDays(1);
@@ -130,6 +314,22 @@ class RepositorioCitasTest {
         }
     }
     
+    @Test
+    void obtenerPorRango_debe_retornar_citas_del_periodo_ordenadas() {
+        LocalDate hoy = LocalDate.now();
+        repositorio.guardar(new Cita("Consulta", "Dr. Test", hoy.plusDays(3), LocalTime.of(9, 0), "Test"));
+        repositorio.guardar(new Cita("Consulta", "Dr. Test", hoy.plusDays(1), LocalTime.of(14, 0), "Test"));
+        repositorio.guardar(new Cita("Consulta", "Dr. Test", hoy.plusDays(1), LocalTime.of(10, 0), "Test"));
+        repositorio.guardar(new Cita("Consulta", "Dr. Test", hoy.plusDays(5), LocalTime.of(10, 0), "Test"));
+        
+        List<Cita> citas = repositorio.obtenerPorRango(hoy.plusDays(1), hoy.plusDays(3));
+        
+        assertEquals(3, citas.size());
+        assertEquals(LocalTime.of(10, 0), citas.get(0).getHora());
+        assertEquals(LocalTime.of(14, 0), citas.get(1).getHora());
+        assertEquals(hoy.plusDays(3), citas.get(2).getFecha());
+    }
+    
     @Test
     void obtenerPendientes_debe_retornar_solo_pendientes() {
         LocalDate fecha = LocalDate.now().plusDays(1);
@@ -147,6 +347,26 @@ class RepositorioCitasTest {
         assertEquals(Cita.EstadoCita.PENDIENTE, pendientes.get(0).getEstado());
     }
     
+    @Test
+    void obtenerCancelables_debe_excluir_citas_dentro_del_limite_y_no_pendientes() {
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime cercana = ahora.plusMinutes(30);
+        LocalDateTime lejana = ahora.plusDays(1);
+        Cita citaCercana = new Cita("Consulta", "Dr. Test", cercana.toLocalDate(), cercana.toLocalTime(), "Test");
+        Cita citaLejana = new Cita("Consulta", "Dr. Test", lejana.toLocalDate(), lejana.toLocalTime(), "Test");
+        Cita citaAtendida = new Cita("Consulta", "Dr. Otro", lejana.toLocalDate(), lejana.toLocalTime(), "Test");
+        repositorio.guardar(citaCercana);
+        repositorio.guardar(citaLejana);
+        repositorio.guardar(citaAtendida);
+        citaAtendida.marcarAtendida();
+        
+        List<Cita> cancelables = repositorio.obtenerCancelables();
+        
+        assertEquals(1, cancelables.size());
+        assertSame(citaLejana, cancelables.get(0));
+        assertEquals(2, repositorio.obtenerPendientes().size());
+    }
+    
     @Test
     void estaOcupado_debe_retornar_true_con_horario_ocupado() {
         LocalDate fecha = LocalDate.now().plusDays(1);
@@ -169,6 +389,32 @@ class RepositorioCitasTest {
         assertFalse(ocupado);
     }
     
+    @Test
+    void estaOcupado_debe_liberar_horario_al_cancelar() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        LocalTime hora = LocalTime.of(10, 0);
+        Cita cita = new Cita("Consulta", "Dr. Test", fecha, hora, "Test");
+        repositorio.guardar(cita);
+        
+        assertTrue(repositorio.cancelarCita(cita.getCodigo()));
+        
+        assertFalse(repositorio.estaOcupado("Dr. Test", fecha, hora));
+        assertTrue(repositorio.guardar(new Cita("Consulta", "Dr. Test", fecha, hora, "Nueva")));
+    }
+    
+    @Test
+    void estaOcupado_debe_liberar_horario_al_marcar_atendida() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        LocalTime hora = LocalTime.of(10, 0);
+        Cita cita = new Cita("Consulta", "Dr. Test", fecha, hora, "Test");
+        repositorio.guardar(cita);
+        
+        cita.marcarAtendida();
+        
+        assertFalse(repositorio.estaOcupado("Dr. Test", fecha, hora));
+        assertTrue(repositorio.obtenerHorariosOcupados("Dr. Test", fecha).isEmpty());
+    }
+    
     @Test
     void obtenerHorariosOcupados_debe_retornar_lista_correcta() {
         LocalDate fecha = LocalDate.now().plusDays(1);
@@ -182,6 +428,24 @@ class RepositorioCitasTest {
         assertTrue(ocupados.contains(LocalTime.of(14, 0)));
     }
     
+    @Test
+    void obtenerDisponibilidad_debe_seguir_reservas_y_cancelaciones() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita cita1 = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 0), "Test");
+        Cita cita2 = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 5), "Test");
+        repositorio.guardar(cita1);
+        repositorio.guardar(cita2);
+        
+        assertFalse(repositorio.obtenerDisponibilidad("Dr. Test", fecha).estaLibre(LocalTime.of(10, 0)));
+        
+        // El bloque sigue ocupado mientras quede una cita pendiente en él
+        repositorio.cancelarCita(cita1.getCodigo());
+        assertFalse(repositorio.obtenerDisponibilidad("Dr. Test", fecha).estaLibre(LocalTime.of(10, 0)));
+        
+        repositorio.cancelarCita(cita2.getCodigo());
+        assertTrue(repositorio.obtenerDisponibilidad("Dr. Test", fecha).estaLibre(LocalTime.of(10, 0)));
+    }
+    
     @Test
     void contarPorEstado_debe_contar_correctamente() {
         LocalDate fecha = LocalDate.now().plusDays(1);
@@ -201,6 +465,70 @@ class RepositorioCitasTest {
         assertEquals(1, repositorio.contarPorEstado(Cita.EstadoCita.CANCELADA));
     }
     
+    @Test
+    void contarPorEstado_debe_actualizarse_en_cada_transicion() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita cita1 = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 0), "Test");
+        Cita cita2 = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(14, 0), "Test");
+        Cita cita3 = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(16, 0), "Test");
+        repositorio.guardar(cita1);
+        repositorio.guardar(cita2);
+        repositorio.guardar(cita3);
+        
+        repositorio.cancelarCita(cita1.getCodigo());
+        cita2.marcarAtendida();
+        cita3.marcarNoAsistio();
+        
+        Map<Cita.EstadoCita, Long> conteo = repositorio.obtenerConteoPorEstado();
+        assertEquals(0L, conteo.get(Cita.EstadoCita.PENDIENTE));
+        assertEquals(1L, conteo.get(Cita.EstadoCita.CANCELADA));
+        assertEquals(1L, conteo.get(Cita.EstadoCita.ATENDIDA));
+        assertEquals(1L, conteo.get(Cita.EstadoCita.NO_ASISTIO));
+    }
+    
+    @Test
+    void compactarFinalizadas_debe_conservar_las_citas_como_vistas() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita pendiente = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(9, 0), "Pendiente");
+        Cita atendida = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 0), "Atendida");
+        Cita cancelada = new Cita("Laboratorio", "Dra. Otra", fecha.plusDays(1), LocalTime.of(11, 30), null);
+        repositorio.guardar(pendiente);
+        repositorio.guardar(atendida);
+        repositorio.guardar(cancelada);
+        atendida.marcarAtendida();
+        repositorio.cancelarCita(cancelada.getCodigo());
+        
+        assertEquals(2, repositorio.compactarFinalizadas());
+        
+        assertEquals(3, repositorio.contarTotal());
+        Cita vista = repositorio.buscarPorCodigo(cancelada.getCodigo());
+        assertNotNull(vista);
+        assertEquals("Laboratorio", vista.getServicio());
+        assertEquals("Dra. Otra", vista.getPersonal());
+        assertEquals(cancelada.getFecha(), vista.getFecha());
+        assertEquals(LocalTime.of(11, 30), vista.getHora());
+        assertNull(vista.getMotivo());
+        assertEquals(Cita.EstadoCita.CANCELADA, vista.getEstado());
+        assertEquals(2, repositorio.obtenerPorRango(fecha, fecha).size());
+        assertEquals(2, repositorio.obtenerPorPersonal("Dr. Test").size());
+        assertFalse(repositorio.guardar(atendida), "Un código compactado no puede repetirse");
+    }
+    
+    @Test
+    void compactarFinalizadas_debe_persistir_cambios_de_estado_de_las_vistas() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita cita = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 0), "Test");
+        repositorio.guardar(cita);
+        cita.marcarAtendida();
+        repositorio.compactarFinalizadas();
+        
+        repositorio.buscarPorCodigo(cita.getCodigo()).marcarNoAsistio();
+        
+        assertEquals(Cita.EstadoCita.NO_ASISTIO, repositorio.buscarPorCodigo(cita.getCodigo()).getEstado());
+        assertEquals(0, repositorio.contarPorEstado(Cita.EstadoCita.ATENDIDA));
+        assertEquals(1, repositorio.contarPorEstado(Cita.EstadoCita.NO_ASISTIO));
+    }
+    
     @Test
     void limpiar_debe_eliminar_todas_las_citas() {
         LocalDate fecha = LocalDate.now().plusDays(1);
@@ -210,5 +538,127 @@ class RepositorioCitasTest {
         repositorio.limpiar();
         
         assertEquals(0, repositorio.contarTotal());
+        assertEquals(0, repositorio.contarPorEstado(Cita.EstadoCita.PENDIENTE));
+    }
+    
+    @Test
+    void obtenerPagina_debe_recorrer_todas_las_citas_en_orden() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        for (int i = 0; i < 7; i++) {
+            Cita cita = new Cita("Consulta", "Dr. Test", fecha.plusDays(i % 3), LocalTime.of(8 + i, 0), "Test");
+            repositorio.guardar(cita);
+            if (i % 2 == 0) {
+                cita.marcarAtendida();
+            }
+        }
+        repositorio.compactarFinalizadas();
+        
+        List<Cita> recorridas = new ArrayList<>();
+        String continuacion = null;
+        int paginas = 0;
+        do {
+            PaginaCitas pagina = repositorio.obtenerPagina(null, null, continuacion, 3);
+            recorridas.addAll(pagina.getCitas());
+            continuacion = pagina.getContinuacion();
+            paginas++;
+        } while (continuacion != null);
+        
+        assertEquals(3, paginas);
+        assertEquals(7, recorridas.size());
+        List<Cita> ordenadas = new ArrayList<>(recorridas);
+        ordenadas.sort(Comparator.comparing(Cita::getFecha).thenComparing(Cita::getHora));
+        assertEquals(ordenadas.stream().map(Cita::getCodigo).collect(Collectors.toList()),
+                     recorridas.stream().map(Cita::getCodigo).collect(Collectors.toList()));
+    }
+    
+    @Test
+    void obtenerPagina_debe_poner_primero_las_citas_sin_hora() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita conHora = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(0, 0), "Test");
+        Cita sinHora = new Cita("Consulta", "Dr. Test", fecha, null, "Test");
+        Cita otroDia = new Cita("Consulta", "Dr. Test", fecha.plusDays(1), null, "Test");
+        repositorio.guardar(conHora);
+        repositorio.guardar(sinHora);
+        repositorio.guardar(otroDia);
+        
+        List<Cita> recorridas = new ArrayList<>();
+        String continuacion = null;
+        do {
+            PaginaCitas pagina = repositorio.obtenerPagina(null, null, continuacion, 1);
+            recorridas.addAll(pagina.getCitas());
+            continuacion = pagina.getContinuacion();
+        } while (continuacion != null);
+        
+        assertEquals(List.of(sinHora, conHora, otroDia), recorridas);
+    }
+    
+    @Test
+    void citas_guardadas_no_deben_cambiar_sus_claves() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita cita = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(9, 0), "Test");
+        repositorio.guardar(cita);
+        
+        assertThrows(IllegalStateException.class, () -> cita.setHora(LocalTime.of(10, 0)));
+        assertThrows(IllegalStateException.class, () -> cita.setFecha(fecha.plusDays(1)));
+        assertThrows(IllegalStateException.class, () -> cita.setPersonal("Dra. Otra"));
+        assertThrows(IllegalStateException.class, () -> cita.setCodigo("CITA-OTRA"));
+        cita.setPersonal("Dr. Test");
+        cita.setMotivo("Otro motivo");
+        
+        assertSame(cita, repositorio.buscarPorCodigo(cita.getCodigo()));
+        assertTrue(repositorio.estaOcupado("Dr. Test", fecha, LocalTime.of(9, 0)));
+        assertEquals(List.of(cita), repositorio.obtenerPorFecha(fecha));
+    }
+    
+    @Test
+    void citas_compactadas_no_deben_volver_a_pendiente() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita cita = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(9, 0), "Test");
+        repositorio.guardar(cita);
+        cita.marcarAtendida();
+        repositorio.compactarFinalizadas();
+        
+        Cita vista = repositorio.buscarPorCodigo(cita.getCodigo());
+        assertThrows(IllegalStateException.class, () -> vista.setEstado(Cita.EstadoCita.PENDIENTE));
+        
+        assertEquals(Cita.EstadoCita.ATENDIDA, vista.getEstado());
+        assertEquals(Cita.EstadoCita.ATENDIDA, repositorio.buscarPorCodigo(cita.getCodigo()).getEstado());
+        assertFalse(repositorio.estaOcupado("Dr. Test", fecha, LocalTime.of(9, 0)));
+        assertEquals(0, repositorio.contarPorEstado(Cita.EstadoCita.PENDIENTE));
+        
+        // Entre estados finales sí se puede
+        vista.marcarNoAsistio();
+        assertEquals(Cita.EstadoCita.NO_ASISTIO, repositorio.buscarPorCodigo(cita.getCodigo()).getEstado());
+    }
+    
+    @Test
+    void obtenerPagina_debe_filtrar_por_estado_y_personal() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        repositorio.guardar(new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(9, 0), "Test"));
+        repositorio.guardar(new Cita("Consulta", "Dra. Otra", fecha, LocalTime.of(9, 0), "Test"));
+        Cita cancelada = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 0), "Test");
+        repositorio.guardar(cancelada);
+        cancelada.cancelar();
+        
+        PaginaCitas pagina = repositorio.obtenerPagina("Dr. Test", Cita.EstadoCita.PENDIENTE, null, 10);
+        
+        assertEquals(1, pagina.getCitas().size());
+        assertFalse(pagina.hayMas());
+        assertThrows(IllegalArgumentException.class, () -> repositorio.obtenerPagina(null, null, "no-es-valida", 10));
+    }
+    
+    @Test
+    void streams_deben_incluir_citas_compactadas() {
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        Cita atendida = new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(9, 0), "Test");
+        repositorio.guardar(atendida);
+        repositorio.guardar(new Cita("Consulta", "Dr. Test", fecha, LocalTime.of(10, 0), "Test"));
+        repositorio.guardar(new Cita("Consulta", "Dra. Otra", fecha, LocalTime.of(10, 0), "Test"));
+        atendida.marcarAtendida();
+        repositorio.compactarFinalizadas();
+        
+        assertEquals(3, repositorio.streamTodas().count());
+        assertEquals(2, repositorio.streamPendientes().count());
+        assertEquals(2, repositorio.streamPorPersonal("Dr. Test").count());
     }
-}
\ No newline at end of file
+}